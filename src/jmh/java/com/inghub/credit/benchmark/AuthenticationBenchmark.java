@@ -0,0 +1,49 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.security.CachingAuthenticationProvider;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Per request HTTP Basic authentication cost, BCrypt on every request against the verified credential cache
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+    private AuthenticationProvider daoAuthenticationProvider;
+    private AuthenticationProvider cachingAuthenticationProvider;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        InMemoryUserDetailsManager userDetailsManager = new InMemoryUserDetailsManager(
+                User.withUsername("user").password(passwordEncoder.encode("12345")).roles("ADMIN").build());
+
+        DaoAuthenticationProvider dao = new DaoAuthenticationProvider(passwordEncoder);
+        dao.setUserDetailsService(userDetailsManager);
+        daoAuthenticationProvider = dao;
+        cachingAuthenticationProvider = new CachingAuthenticationProvider(dao, userDetailsManager, Duration.ofMinutes(5), 10_000);
+    }
+
+    @Benchmark
+    public Authentication bcryptOnEveryRequest() {
+        return daoAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "12345"));
+    }
+
+    @Benchmark
+    public Authentication verifiedCredentialCache() {
+        return cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("user", "12345"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.config.DataSourceConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.repository.CustomerRepository;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Service and persistence layer of the application on the in-memory H2 database, without the web and security layers,
+ * or the whole application with {@link #startWeb}.
+ * The test configurations are on the benchmark classpath too, so the packages are listed instead of scanning com.inghub.credit.
+ * show-sql and the application log configuration are replaced unless a logging.config is passed, console output would
+ * dominate the measurements.
+ */
+@Configuration
+@EnableAutoConfiguration
+@EnableJpaAuditing
+@EnableTransactionManagement
+@EntityScan("com.inghub.credit.domain")
+@EnableJpaRepositories("com.inghub.credit.repository")
+@ComponentScan({"com.inghub.credit.service", "com.inghub.credit.retry"})
+@Import(DataSourceConfiguration.class)
+public class BenchmarkApplication {
+
+    private static final BigDecimal CUSTOMER_CREDIT_LIMIT = new BigDecimal("9999999999999.00");
+
+    // properties are passed as command line arguments, so they override application.yml
+    public static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(arguments(properties));
+    }
+
+    // the whole application with the controller, security and filters behind Tomcat on a random port, read it with
+    // webPort. benchmarkConfiguration adds the beans of the benchmark, scheduled jobs are not started
+    public static ConfigurableApplicationContext startWeb(Class<?> benchmarkConfiguration, String... properties) {
+        String[] webProperties = Stream.concat(Stream.of("server.port=0"), Arrays.stream(properties)).toArray(String[]::new);
+        return new SpringApplicationBuilder(WebApplication.class, benchmarkConfiguration)
+                .web(WebApplicationType.SERVLET)
+                .bannerMode(Banner.Mode.OFF)
+                .run(arguments(webProperties));
+    }
+
+    public static int webPort(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static String[] arguments(String... properties) {
+        List<String> args = new ArrayList<>(List.of("--spring.jpa.show-sql=false"));
+        //LoggingBenchmark measures the application log configuration itself
+        if (Arrays.stream(properties).noneMatch(property -> property.startsWith("logging.config="))) {
+            args.add("--logging.config=classpath:logback-benchmark.xml");
+        }
+        Arrays.stream(properties).map(property -> "--" + property).forEach(args::add);
+        return args.toArray(String[]::new);
+    }
+
+    // a customer whose credit limit no benchmark runs into
+    public static Customer saveCustomer(CustomerRepository customerRepository) {
+        return TestCustomers.save(customerRepository, CUSTOMER_CREDIT_LIMIT);
+    }
+
+    // scans every application package, leaving out the benchmarks and the test configurations on the classpath
+    @Configuration
+    @EnableAutoConfiguration
+    @EnableJpaAuditing
+    @EnableTransactionManagement
+    @EnableAspectJAutoProxy
+    @EntityScan("com.inghub.credit.domain")
+    @EnableJpaRepositories("com.inghub.credit.repository")
+    @ComponentScan(basePackages = "com.inghub.credit",
+                   excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX,
+                                                          pattern = {"com\\.inghub\\.credit\\.benchmark\\..*",
+                                                                     "com\\.inghub\\.credit\\.config\\.(JpaTestConfiguration|TestSecurityConfig)"}))
+    static class WebApplication {
+
+    }
+}
@@ -0,0 +1,80 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.model.CreateLoanRequest;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.LoanBatchService;
+import com.inghub.credit.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Loans per second created one transaction per loan against POST /loans/batch chunks, without the HTTP layer
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LoanBatchBenchmark.LOAN_COUNT)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanBatchBenchmark {
+
+    static final int LOAN_COUNT = 200;
+
+    @Param({"20", "100"})
+    private int chunkSize;
+
+    @Param({"6", "24"})
+    private int installmentCount;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+    private LoanBatchService loanBatchService;
+    private JdbcTemplate jdbcTemplate;
+    private List<CreateLoanRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("credit.loan.batch.chunk-size=" + chunkSize, "credit.loan.batch.max-size=" + LOAN_COUNT);
+        loanService = context.getBean(LoanService.class);
+        loanBatchService = context.getBean(LoanBatchService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        Customer customer = BenchmarkApplication.saveCustomer(context.getBean(CustomerRepository.class));
+
+        requests = new ArrayList<>(LOAN_COUNT);
+        for (int i = 0; i < LOAN_COUNT; i++) {
+            requests.add(new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), installmentCount, new BigDecimal("0.10")));
+        }
+    }
+
+    // keeps the table sizes of every iteration the same
+    @Setup(Level.Iteration)
+    public void deleteLoans() {
+        jdbcTemplate.update("delete from loan_installment");
+        jdbcTemplate.update("delete from loan");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void createLoansOneByOne(Blackhole blackhole) {
+        for (CreateLoanRequest request : requests) {
+            blackhole.consume(loanService.createLoan(request.customerId(), request.loanAmount(), request.numberOfInstallment(), request.interestRate()));
+        }
+    }
+
+    @Benchmark
+    public void createLoansInBatch(Blackhole blackhole) {
+        blackhole.consume(loanBatchService.createLoans(requests));
+    }
+}
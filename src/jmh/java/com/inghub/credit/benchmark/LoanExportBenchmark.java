@@ -0,0 +1,61 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.LoanExportService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Time and allocation of exporting every installment of one customer, gc.alloc.rate.norm / installmentCount should stay flat
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanExportBenchmark {
+
+    private static final int INSTALLMENTS_PER_LOAN = 24;
+
+    @Param({"12000", "120000"})
+    private int installmentCount;
+
+    private ConfigurableApplicationContext context;
+    private LoanExportService loanExportService;
+    private long customerId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        loanExportService = context.getBean(LoanExportService.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        customerId = BenchmarkApplication.saveCustomer(context.getBean(CustomerRepository.class)).getId();
+
+        // ids above the seed data, generated in the database instead of going through the entities
+        int loanCount = installmentCount / INSTALLMENTS_PER_LOAN;
+        jdbcTemplate.update("insert into loan (id, idate, customer_id, loan_amount, number_of_installment, is_paid, interest_rate, " +
+                                    "paid_installment_count, remaining_amount, next_due_date, next_installment_amount) " +
+                                    "select 1000000 + x, current_timestamp, ?, 1000.00, ?, false, 0.10, 0, 45.83 * ?, current_date, 45.83 " +
+                                    "from system_range(1, ?)",
+                            customerId, INSTALLMENTS_PER_LOAN, INSTALLMENTS_PER_LOAN, loanCount);
+        jdbcTemplate.update("insert into loan_installment (id, idate, loan_id, amount, paid_amount, due_date, is_paid) " +
+                                    "select 1000000 + x, current_timestamp, 1000001 + (x - 1) / ?, 45.83, 0, dateadd(month, mod(x, ?), current_date), false " +
+                                    "from system_range(1, ?)",
+                            INSTALLMENTS_PER_LOAN, INSTALLMENTS_PER_LOAN, loanCount * INSTALLMENTS_PER_LOAN);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long exportLoans() throws IOException {
+        return loanExportService.exportLoansByCustomerId(customerId, OutputStream.nullOutputStream());
+    }
+}
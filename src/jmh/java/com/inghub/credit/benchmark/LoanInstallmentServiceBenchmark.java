@@ -0,0 +1,93 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.util.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanInstallmentServiceBenchmark {
+
+    private static final BigDecimal LOAN_AMOUNT = new BigDecimal("12345.67");
+    private static final BigDecimal INTEREST_RATE = new BigDecimal("0.20");
+    private static final int PAYMENT_WINDOW_MONTHS = 3;
+
+    @Param({"6", "12", "24", "60", "120"})
+    private int installmentCount;
+
+    // Payment size expressed as a multiple of the installment amount
+    @Param({"1", "3", "12"})
+    private int paymentSize;
+
+    private LoanInstallmentService loanInstallmentService;
+    private Loan loan;
+    private BigDecimal totalAmountToBePaid;
+    private long loanAmountMinorUnits;
+    private long interestRateUnits;
+    private List<LocalDate> installmentDates;
+    private Loan unpaidLoan;
+    private BigDecimal paidAmount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The benchmarked paths never touch the repository
+        loanInstallmentService = new LoanInstallmentService(null);
+        loan = new Loan();
+        loan.setId(1L);
+        totalAmountToBePaid = LoanInstallmentService.calculateTotalAmountToBePaid(LOAN_AMOUNT, installmentCount, INTEREST_RATE);
+        loanAmountMinorUnits = Money.toMinorUnits(LOAN_AMOUNT);
+        interestRateUnits = Money.toRateUnits(INTEREST_RATE);
+        installmentDates = LoanInstallmentService.createInstallmentDatesByInstallmentCount(installmentCount);
+        BigDecimal installmentAmount = LoanInstallmentService.calculateInstallmentAmount(totalAmountToBePaid, installmentCount);
+        // The eligibility check reads only the loan summary, due dates start in the current month
+        unpaidLoan = new Loan();
+        unpaidLoan.setId(2L);
+        unpaidLoan.setNumberOfInstallment(installmentCount);
+        unpaidLoan.setRemainingAmount(totalAmountToBePaid);
+        unpaidLoan.setNextDueDate(LocalDate.now());
+        unpaidLoan.setNextInstallmentAmount(installmentAmount);
+        paidAmount = installmentAmount.multiply(BigDecimal.valueOf(paymentSize));
+    }
+
+    @Benchmark
+    public List<LocalDate> createInstallmentDatesByInstallmentCount() {
+        return LoanInstallmentService.createInstallmentDatesByInstallmentCount(installmentCount);
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotalAmountToBePaid() {
+        return LoanInstallmentService.calculateTotalAmountToBePaid(LOAN_AMOUNT, installmentCount, INTEREST_RATE);
+    }
+
+    @Benchmark
+    public BigDecimal calculateInstallmentAmount() {
+        return LoanInstallmentService.calculateInstallmentAmount(totalAmountToBePaid, installmentCount);
+    }
+
+    // The schedule in cents without the entities and the BigDecimal conversion
+    @Benchmark
+    public long[] installments() {
+        return Money.installments(loanAmountMinorUnits, interestRateUnits, installmentCount);
+    }
+
+    @Benchmark
+    public List<LoanInstallment> createLoanInstallments() {
+        return loanInstallmentService.createLoanInstallments(loan, LOAN_AMOUNT, installmentCount, installmentDates, INTEREST_RATE);
+    }
+
+    @Benchmark
+    public int countEligibleInstallments() {
+        return LoanInstallmentService.countEligibleInstallments(unpaidLoan, paidAmount, PAYMENT_WINDOW_MONTHS);
+    }
+}
@@ -0,0 +1,113 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.exception.ResourceNotFoundException;
+import com.inghub.credit.service.LoanPaymentLocks;
+import com.inghub.credit.service.LoanPaymentService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payments per second of 8 threads paying one installment at a time of a few hot loans. Without locking the payments of
+ * a loan race on the customer and loan rows and the losers are retried by @RetryOnConflict, with the striped payment
+ * locks they queue in-process and every transaction commits at its first attempt. The retries and the payments that gave
+ * up after the last attempt are printed after every iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanPaymentContentionBenchmark {
+
+    // enough monthly installments in the past that an iteration never pays a loan off
+    private static final int INSTALLMENTS_PER_LOAN = 20000;
+    private static final BigDecimal INSTALLMENT_AMOUNT = new BigDecimal("10.00");
+
+    @Param({"none", "striped"})
+    private String locking;
+
+    @Param({"1", "4"})
+    private int hotLoanCount;
+
+    private ConfigurableApplicationContext context;
+    private LoanPaymentService loanPaymentService;
+    private LoanPaymentLocks loanPaymentLocks;
+    private MeterRegistry meterRegistry;
+    private JdbcTemplate jdbcTemplate;
+    private long firstLoanId = 2000000;
+    private double retriesBefore;
+    private double exhaustedBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        loanPaymentService = context.getBean(LoanPaymentService.class);
+        loanPaymentLocks = context.getBean(LoanPaymentLocks.class);
+        meterRegistry = context.getBean(MeterRegistry.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    // fresh loans for every iteration, one customer per loan so only payments of the same loan contend
+    @Setup(Level.Iteration)
+    public void insertHotLoans() {
+        firstLoanId += hotLoanCount;
+        jdbcTemplate.update("insert into customer (id, idate, name, surname, credit_limit, used_credit_limit) " +
+                                    "select x, current_timestamp, 'hot', 'customer', 9999999999999.00, 9999999999.00 " +
+                                    "from system_range(?, ?)",
+                            firstLoanId, firstLoanId + hotLoanCount - 1);
+        jdbcTemplate.update("insert into loan (id, idate, customer_id, loan_amount, number_of_installment, is_paid, interest_rate, " +
+                                    "paid_installment_count, remaining_amount, next_due_date, next_installment_amount) " +
+                                    "select x, current_timestamp, x, ?, ?, false, 0, 0, ?, dateadd(month, -?, current_date), ? " +
+                                    "from system_range(?, ?)",
+                            INSTALLMENT_AMOUNT.multiply(BigDecimal.valueOf(INSTALLMENTS_PER_LOAN)), INSTALLMENTS_PER_LOAN,
+                            INSTALLMENT_AMOUNT.multiply(BigDecimal.valueOf(INSTALLMENTS_PER_LOAN)), INSTALLMENTS_PER_LOAN, INSTALLMENT_AMOUNT,
+                            firstLoanId, firstLoanId + hotLoanCount - 1);
+        jdbcTemplate.update("insert into loan_installment (id, idate, loan_id, amount, paid_amount, due_date, is_paid) " +
+                                    "select l.id * ? + x, current_timestamp, l.id, ?, 0, dateadd(month, x - 1 - ?, current_date), false " +
+                                    "from loan l, system_range(1, ?) where l.id between ? and ?",
+                            INSTALLMENTS_PER_LOAN, INSTALLMENT_AMOUNT, INSTALLMENTS_PER_LOAN, INSTALLMENTS_PER_LOAN,
+                            firstLoanId, firstLoanId + hotLoanCount - 1);
+        retriesBefore = conflictCount("retried");
+        exhaustedBefore = conflictCount("exhausted");
+    }
+
+    @TearDown(Level.Iteration)
+    public void printConflicts() {
+        System.out.printf("%n%s locking, %d hot loans: %.0f conflict retries, %.0f payments gave up%n", locking, hotLoanCount,
+                          conflictCount("retried") - retriesBefore, conflictCount("exhausted") - exhaustedBefore);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean payInstallment() {
+        long loanId = firstLoanId + ThreadLocalRandom.current().nextInt(hotLoanCount);
+        try {
+            if (locking.equals("striped")) {
+                loanPaymentLocks.withLock(loanId, () -> loanPaymentService.payLoan(loanId, INSTALLMENT_AMOUNT));
+            } else {
+                loanPaymentService.payLoan(loanId, INSTALLMENT_AMOUNT);
+            }
+            return true;
+        } catch (ConcurrencyFailureException | ResourceNotFoundException e) {
+            return false;
+        }
+    }
+
+    private double conflictCount(String result) {
+        return meterRegistry.find("credit.retry.conflicts").tag("result", result).counters().stream().mapToDouble(Counter::count).sum();
+    }
+}
@@ -0,0 +1,44 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanPaymentServiceBenchmark {
+
+    private static final BigDecimal LOAN_AMOUNT = new BigDecimal("12345.67");
+    private static final BigDecimal INTEREST_RATE = new BigDecimal("0.20");
+
+    @Param({"6", "12", "24", "60", "120"})
+    private int installmentCount;
+
+    // Payment size expressed as a multiple of the installment amount
+    @Param({"1", "3", "12"})
+    private int paymentSize;
+
+    private BigDecimal installmentAmount;
+    private BigDecimal paidAmount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BigDecimal totalAmountToBePaid = LoanInstallmentService.calculateTotalAmountToBePaid(LOAN_AMOUNT, installmentCount, INTEREST_RATE);
+        installmentAmount = LoanInstallmentService.calculateInstallmentAmount(totalAmountToBePaid, installmentCount);
+        paidAmount = installmentAmount.multiply(BigDecimal.valueOf(paymentSize));
+    }
+
+    @Benchmark
+    public void checkPaymentAmountMoreThanInstallmentAmount(Blackhole blackhole) {
+        LoanPaymentService.checkPaymentAmountMoreThanInstallmentAmount(installmentAmount, paidAmount);
+        blackhole.consume(paidAmount);
+    }
+}
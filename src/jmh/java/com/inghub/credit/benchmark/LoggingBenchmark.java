@@ -0,0 +1,86 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of POST /loans without the HTTP layer under the application log configuration, written to a log file.
+ * sync logs every service step and statement synchronously like the default profile did before the async-logging
+ * profile, async runs the async-logging profile and none is the benchmark log configuration as the baseline.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    @Param({"none", "sync", "async"})
+    private String pipeline;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+    private CustomerRepository customerRepository;
+    private JdbcTemplate jdbcTemplate;
+    private Path logDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        logDirectory = Files.createTempDirectory("logging-benchmark");
+        String logFile = "logging.file.name=" + logDirectory.resolve("credit.log");
+        if ("none".equals(pipeline)) {
+            context = BenchmarkApplication.start();
+        } else if ("async".equals(pipeline)) {
+            context = BenchmarkApplication.start("logging.config=classpath:logback-spring.xml", logFile, "logging.threshold.console=OFF",
+                                                 "spring.profiles.active=default,async-logging");
+        } else {
+            context = BenchmarkApplication.start("logging.config=classpath:logback-spring.xml", logFile, "logging.threshold.console=OFF",
+                                                 "logging.level.com.inghub.credit=DEBUG");
+        }
+        loanService = context.getBean(LoanService.class);
+        customerRepository = context.getBean(CustomerRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    // keeps the table sizes of every iteration the same
+    @Setup(Level.Iteration)
+    public void deleteLoans() {
+        jdbcTemplate.update("delete from loan_installment");
+        jdbcTemplate.update("delete from loan");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (var files = Files.walk(logDirectory)) {
+            files.sorted((first, second) -> second.compareTo(first)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // one customer per thread, so the threads do not wait for each other's credit limit row lock
+    @State(Scope.Thread)
+    public static class CustomerState {
+
+        private Long customerId;
+
+        @Setup(Level.Trial)
+        public void setUp(LoggingBenchmark benchmark) {
+            customerId = BenchmarkApplication.saveCustomer(benchmark.customerRepository).getId();
+        }
+    }
+
+    @Benchmark
+    public Object createLoan(CustomerState customerState) {
+        return loanService.createLoan(customerState.customerId, new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+    }
+}
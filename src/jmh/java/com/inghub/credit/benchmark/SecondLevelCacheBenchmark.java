@@ -0,0 +1,56 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Latency of GET /loans/{loanId}/installments without the HTTP layer, with and without the l2cache profile
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecondLevelCacheBenchmark {
+
+    private static final int LOAN_COUNT = 100;
+
+    @Param({"false", "true"})
+    private boolean secondLevelCache;
+
+    private ConfigurableApplicationContext context;
+    private LoanInstallmentService loanInstallmentService;
+    private long firstLoanId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = secondLevelCache ? BenchmarkApplication.start("spring.profiles.active=default,l2cache") : BenchmarkApplication.start();
+        loanInstallmentService = context.getBean(LoanInstallmentService.class);
+        LoanService loanService = context.getBean(LoanService.class);
+
+        Customer customer = BenchmarkApplication.saveCustomer(context.getBean(CustomerRepository.class));
+
+        firstLoanId = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 12, new BigDecimal("0.10")).getId();
+        for (int i = 1; i < LOAN_COUNT; i++) {
+            loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 12, new BigDecimal("0.10"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object listInstallments() {
+        long loanId = firstLoanId + ThreadLocalRandom.current().nextInt(LOAN_COUNT);
+        return loanInstallmentService.searchLoanInstallmentsByLoanId(loanId, 20, 1, null, null, true);
+    }
+}
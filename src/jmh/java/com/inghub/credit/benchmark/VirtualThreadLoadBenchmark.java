@@ -0,0 +1,152 @@
+package com.inghub.credit.benchmark;
+
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.LoanService;
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests per second of GET /loans/{loanId}/installments arriving in bursts of {@link #REQUEST_COUNT}, sent over HTTP to
+ * the application running on Tomcat's default 200 platform threads or on one virtual thread per request. Every request
+ * waits downstreamMillis for a blocking call on its request thread before the controller reads the database, the share
+ * of I/O the virtual-threads profile is for. Both runs use a Hikari pool of poolSize connections.
+ * p50 and p99 request latency, including the wait for a free thread, are printed after every iteration.
+ * Virtual threads need Java 21, run with -jvm pointing to a Java 21 runtime and -jvmArgsAppend -Djdk.tracePinnedThreads=short
+ * to report pinned carriers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VirtualThreadLoadBenchmark.REQUEST_COUNT)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadLoadBenchmark {
+
+    static final int REQUEST_COUNT = 1000;
+    private static final int LOAN_COUNT = 100;
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder().encodeToString("user:12345".getBytes(StandardCharsets.UTF_8));
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"20"})
+    private int downstreamMillis;
+
+    @Param({"10"})
+    private int poolSize;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String installmentsUrl;
+    private long firstLoanId;
+    private final List<long[]> iterationLatencies = new ArrayList<>();
+    private final AtomicInteger failedRequestCount = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> properties = new ArrayList<>(List.of("benchmark.downstream-millis=" + downstreamMillis,
+                                                          "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                                                          "spring.datasource.hikari.minimum-idle=" + poolSize));
+        if (threads.equals("virtual")) {
+            properties.add("spring.profiles.active=default,virtual-threads");
+        }
+        context = BenchmarkApplication.startWeb(DownstreamCall.class, properties.toArray(String[]::new));
+        installmentsUrl = "http://localhost:" + BenchmarkApplication.webPort(context) + "/api/v1/loans/%d/installments?pageSize=20&pageNumber=1";
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        Customer customer = BenchmarkApplication.saveCustomer(context.getBean(CustomerRepository.class));
+
+        LoanService loanService = context.getBean(LoanService.class);
+        firstLoanId = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 12, new BigDecimal("0.10")).getId();
+        for (int i = 1; i < LOAN_COUNT; i++) {
+            loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 12, new BigDecimal("0.10"));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies() {
+        long[] latencies = iterationLatencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        iterationLatencies.clear();
+        if (latencies.length > 0) {
+            System.out.printf("%n%s threads, %d requests, %d failed: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", threads, latencies.length,
+                              failedRequestCount.getAndSet(0), percentileMillis(latencies, 50), percentileMillis(latencies, 99),
+                              percentileMillis(latencies, 100));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void handleRequests() {
+        long[] latencies = new long[REQUEST_COUNT];
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[REQUEST_COUNT];
+        long arrival = System.nanoTime();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            int request = i;
+            long loanId = firstLoanId + ThreadLocalRandom.current().nextInt(LOAN_COUNT);
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(installmentsUrl.formatted(loanId)))
+                    .header("Authorization", AUTHORIZATION)
+                    .GET()
+                    .build();
+            responses[i] = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, exception) -> {
+                        latencies[request] = System.nanoTime() - arrival;
+                        if (exception != null || response.statusCode() != 200) {
+                            failedRequestCount.incrementAndGet();
+                        }
+                    });
+        }
+        CompletableFuture.allOf(responses).exceptionally(exception -> null).join();
+        iterationLatencies.add(latencies);
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    // a blocking downstream call of every API request, made on the request thread after authentication
+    @Configuration
+    static class DownstreamCall {
+
+        @Bean
+        FilterRegistrationBean<Filter> downstreamCallFilter(@Value("${benchmark.downstream-millis}") long downstreamMillis) {
+            FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>((request, response, chain) -> {
+                try {
+                    Thread.sleep(downstreamMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                chain.doFilter(request, response);
+            });
+            registration.addUrlPatterns("/api/*");
+            return registration;
+        }
+    }
+}
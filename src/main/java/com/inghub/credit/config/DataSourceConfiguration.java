@@ -3,6 +3,9 @@ package com.inghub.credit.config;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,9 +30,22 @@ public class DataSourceConfiguration {
     @Value("${spring.datasource.poolName}")
     private String poolName;
 
+    @Value("${spring.datasource.hikari.maximum-pool-size}")
+    private int maximumPoolSize;
+
+    @Value("${spring.datasource.hikari.minimum-idle}")
+    private int minimumIdle;
+
+    @Value("${spring.datasource.hikari.connection-timeout}")
+    private long connectionTimeout;
+
+    //the pool starts in the constructor, so the hikaricp.connections gauges are registered here, afterwards the
+    //metrics tracker can not be set anymore
     @Bean
-    public DataSource dataSource() {
-        return new HikariDataSource(hikariConfig());
+    public DataSource dataSource(ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariConfig config = hikariConfig();
+        meterRegistry.ifAvailable(registry -> config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        return new HikariDataSource(config);
     }
 
     private HikariConfig hikariConfig() {
@@ -39,7 +55,11 @@ public class DataSourceConfiguration {
         config.setUsername(username);
         config.setPassword(password);
         config.setPoolName(poolName);
-        config.setConnectionTimeout(150 * 1000);
+        //with virtual threads request concurrency is unbounded, the pool size limits the concurrent database work
+        //and the connection timeout how long requests queue for a connection
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setConnectionTimeout(connectionTimeout);
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
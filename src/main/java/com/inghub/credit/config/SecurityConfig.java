@@ -1,7 +1,11 @@
 package com.inghub.credit.config;
 
+import com.inghub.credit.security.CachingAuthenticationProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -15,21 +19,38 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    @Value("${credit.security.credential-cache.ttl}")
+    private Duration credentialCacheTtl;
+
+    @Value("${credit.security.credential-cache.maximum-size}")
+    private long credentialCacheMaximumSize;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
     }
 
+    // BCrypt runs once per credential and TTL, repeated requests with the same credentials are served from the cache
+    @Bean
+    public AuthenticationProvider authenticationProvider(UserDetailsService userDetailsService) {
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider(passwordEncoder());
+        daoAuthenticationProvider.setUserDetailsService(userDetailsService);
+        return new CachingAuthenticationProvider(daoAuthenticationProvider, userDetailsService, credentialCacheTtl, credentialCacheMaximumSize);
+    }
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity httpSecurity) throws Exception {
         httpSecurity.csrf(AbstractHttpConfigurer::disable);
         httpSecurity.authorizeHttpRequests(authorized -> {
             authorized.requestMatchers("/", "/home", "/public/**").permitAll(); // Allow specific public URLs
+            authorized.requestMatchers("/actuator/health").permitAll(); // Probes, metrics are scraped with credentials
             authorized.anyRequest().authenticated(); // Require authentication for all other requests
         });
         httpSecurity.httpBasic(Customizer.withDefaults());
@@ -1,36 +1,59 @@
 package com.inghub.credit.controller;
 
+import com.inghub.credit.model.CreateLoanBatchResponse;
 import com.inghub.credit.model.CreateLoanRequest;
 import com.inghub.credit.model.PayLoanRequest;
 import com.inghub.credit.model.CreateLoanResponse;
 import com.inghub.credit.model.ListLoanInstallmentsResponse;
 import com.inghub.credit.model.ListLoanResponse;
 import com.inghub.credit.model.PayLoanResponse;
+import com.inghub.credit.service.IdempotencyService;
+import com.inghub.credit.service.LoanBatchService;
+import com.inghub.credit.service.LoanExportService;
 import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentLocks;
 import com.inghub.credit.service.LoanPaymentService;
 import com.inghub.credit.service.LoanService;
+import com.inghub.credit.service.PaymentLedgerService;
 import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
 
 @RequestMapping("/api/v1")
 @RestController
 @RequiredArgsConstructor
 public class LoanController {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final LoanService loanService;
+    private final LoanBatchService loanBatchService;
+    private final LoanExportService loanExportService;
     private final LoanInstallmentService loanInstallmentService;
     private final LoanPaymentService loanPaymentService;
+    private final LoanPaymentLocks loanPaymentLocks;
+    private final IdempotencyService idempotencyService;
+    private final PaymentLedgerService paymentLedgerService;
 
+    @Value("${credit.loan.export.timeout}")
+    private Duration exportTimeout;
 
-    //list loans of customer
+    //list loans of customer, an empty or previously returned cursor switches to keyset pagination. waitForPayments
+    //waits until the payments of the customer in the payment ledger are applied
     @GetMapping("/loans")
     public ResponseEntity<ListLoanResponse> getLoansOfCustomer(@Valid @RequestParam("customerId") Long customerId,
                                                                @Valid @RequestParam(value = "loanAmount", required = false) BigDecimal loanAmount,
@@ -38,33 +61,63 @@ public class LoanController {
                                                                @Valid @RequestParam(value = "isPaid", required = false) Boolean paid,
                                                                @Valid @RequestParam(value = "pageSize", required = false) Integer pageSize,
                                                                @Valid @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
-                                                               @Valid @RequestParam(value = "sort", required = false) String sort) {
+                                                               @Valid @RequestParam(value = "sort", required = false) String sort,
+                                                               @Valid @RequestParam(value = "cursor", required = false) String cursor,
+                                                               @RequestParam(value = "withTotal", defaultValue = "true") boolean withTotal,
+                                                               @RequestParam(value = "waitForPayments", defaultValue = "false") boolean waitForPayments) {
 
-        ListLoanResponse loans = loanService.searchLoansByCustomerId(customerId, loanAmount, installmentCount, paid, pageSize, pageNumber, sort);
+        if (waitForPayments) {
+            paymentLedgerService.awaitCustomerPayments(customerId);
+        }
+        ListLoanResponse loans = loanService.searchLoansByCustomerId(customerId, loanAmount, installmentCount, paid, pageSize, pageNumber, sort, cursor, withTotal);
         return new ResponseEntity<>(loans, HttpStatus.OK);
     }
 
-    //list installments for loan
+    //list installments for loan, an empty or previously returned cursor switches to keyset pagination. waitForPayments
+    //waits until the payments of the loan in the payment ledger are applied
     @GetMapping("/loans/{loanId}/installments")
     public ResponseEntity<ListLoanInstallmentsResponse> getLoanInstallments(@PathVariable("loanId") Long loanId,
                                                                             @Valid @RequestParam(value = "pageSize", required = false) Integer pageSize,
                                                                             @Valid @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
-                                                                            @Valid @RequestParam(value = "sort", required = false) String sort) {
+                                                                            @Valid @RequestParam(value = "sort", required = false) String sort,
+                                                                            @Valid @RequestParam(value = "cursor", required = false) String cursor,
+                                                                            @RequestParam(value = "withTotal", defaultValue = "true") boolean withTotal,
+                                                                            @RequestParam(value = "waitForPayments", defaultValue = "false") boolean waitForPayments) {
 
-        ListLoanInstallmentsResponse loanInstallments = loanInstallmentService.searchLoanInstallmentsByLoanId(loanId, pageSize, pageNumber, sort);
+        if (waitForPayments) {
+            paymentLedgerService.awaitLoanPayments(loanId);
+        }
+        ListLoanInstallmentsResponse loanInstallments = loanInstallmentService.searchLoanInstallmentsByLoanId(loanId, pageSize, pageNumber, sort, cursor, withTotal);
         return new ResponseEntity<>(loanInstallments, HttpStatus.OK);
     }
 
-    //create loan for customer
+    //export every loan and installment of customer as NDJSON, streamed from a database cursor. Runs as an async request
+    //with its own timeout, other async requests keep the default one
+    @GetMapping(value = "/loans/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public WebAsyncTask<Void> exportLoansOfCustomer(@RequestParam("customerId") Long customerId, HttpServletResponse response) {
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            OutputStream outputStream = response.getOutputStream();
+            loanExportService.exportLoansByCustomerId(customerId, outputStream);
+            outputStream.flush();
+            return null;
+        });
+    }
+
+    //create loan for customer, a retry with the same Idempotency-Key gets the response of the first request
     @PostMapping("/loans")
     public ResponseEntity<CreateLoanResponse> createLoan(@Valid @RequestBody CreateLoanRequest request, BindingResult bindingResult,
+                                                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
                                                          UriComponentsBuilder uriComponentsBuilder) throws BindException {
 
         if (bindingResult.hasErrors() || (request == null)) {
             throw new BindException(bindingResult);
         }
 
-        CreateLoanResponse response = loanService.createLoan(request.customerId(), request.loanAmount(), request.numberOfInstallment(), request.interestRate());
+        CreateLoanResponse response = idempotencyService.execute("createLoan", idempotencyKey, request, CreateLoanResponse.class,
+                                                                 () -> loanService.createLoan(request.customerId(), request.loanAmount(),
+                                                                                              request.numberOfInstallment(), request.interestRate()));
 
         //TODO: create GET loans/{id} api
         return ResponseEntity
@@ -72,15 +125,27 @@ public class LoanController {
                 .body(response);
     }
 
+    //create loans in chunked transactions, every item is reported separately instead of failing the whole request
+    @PostMapping("/loans/batch")
+    public ResponseEntity<CreateLoanBatchResponse> createLoans(@RequestBody List<CreateLoanRequest> requests) {
+
+        CreateLoanBatchResponse response = loanBatchService.createLoans(requests);
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    //pay loan, a retry with the same Idempotency-Key gets the response of the first request instead of paying again.
+    //Payments of one loan wait for each other in memory, the lock is held until the payment transaction is committed
     @PostMapping("/loans/pay")
-    public ResponseEntity<PayLoanResponse> payLoan(@Valid @RequestBody PayLoanRequest request, BindingResult bindingResult) throws BindException {
+    public ResponseEntity<PayLoanResponse> payLoan(@Valid @RequestBody PayLoanRequest request, BindingResult bindingResult,
+                                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws BindException {
 
         if (bindingResult.hasErrors() || (request == null)) {
             throw new BindException(bindingResult);
         }
 
-        PayLoanResponse response = loanPaymentService.payLoan(request.loanId(), request.paidAmount());
-
+        PayLoanResponse response = loanPaymentLocks.withLock(request.loanId(), () ->
+                idempotencyService.execute("payLoan", idempotencyKey, request, PayLoanResponse.class,
+                                           () -> loanPaymentService.payLoan(request.loanId(), request.paidAmount())));
 
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
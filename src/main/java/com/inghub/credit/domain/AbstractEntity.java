@@ -3,6 +3,7 @@ package com.inghub.credit.domain;
 import jakarta.persistence.Column;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
@@ -25,4 +26,9 @@ public abstract class AbstractEntity {
     @LastModifiedDate
     private LocalDateTime updateDate;
 
+    //checked by every entity update, the bulk updates of the repositories increment it themselves
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.inghub.credit.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+//written by the statements of IdempotencyKeyRepository only, so a claim is one insert and never a select and merge
+@Getter
+@Setter
+@Entity
+@Table(name = "idempotency_key")
+public class IdempotencyKey extends AbstractEntity {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    @Column(name = "operation", nullable = false)
+    private String operation;
+
+    @Column(name = "request_hash", nullable = false)
+    private String requestHash;
+
+    @Column(name = "is_completed", nullable = false)
+    private boolean completed;
+
+    @Column(name = "response_body")
+    private String responseBody;
+
+    @Override
+    public String toString() {
+        return "IdempotencyKey{" +
+                "key='" + key + '\'' +
+                ", operation='" + operation + '\'' +
+                ", completed=" + completed +
+                '}';
+    }
+}
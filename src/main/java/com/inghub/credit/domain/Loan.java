@@ -2,22 +2,28 @@ package com.inghub.credit.domain;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 @Getter
 @Setter
 @Entity
 @Table(name = "loan")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "loan")
 public class Loan extends AbstractEntity {
 
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", referencedColumnName = "id", nullable = false)
     private Customer customer;
 
@@ -33,18 +39,58 @@ public class Loan extends AbstractEntity {
     @Column(name = "is_paid", columnDefinition = "TINYINT", nullable = false)
     private boolean paid;
 
+    //running summary of the installments, set on creation and updated by every payment in the same transaction.
+    //The unpaid installments are due monthly from nextDueDate, all of them are nextInstallmentAmount except the
+    //last one, which carries the rest of remainingAmount. LoanSummaryVerificationJob checks it against the rows
+    @Column(name = "paid_installment_count", columnDefinition = "SMALLINT", nullable = false)
+    private int paidInstallmentCount;
+
+    @Column(name = "remaining_amount", nullable = false)
+    private BigDecimal remainingAmount;
+
+    @Column(name = "next_due_date")
+    private LocalDate nextDueDate;
+
+    @Column(name = "next_installment_amount")
+    private BigDecimal nextInstallmentAmount;
+
     @OneToMany(mappedBy = "loan", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "loan-installments")
     private List<LoanInstallment> loanInstallments;
 
+    //the summary once the next installmentCount installments are paid with paidAmount. The next installment is the
+    //last one when only one is left, and the loan is paid when none is left
+    public LoanSummary summaryAfterPayment(int installmentCount, BigDecimal paidAmount) {
+        int unpaidCount = numberOfInstallment - paidInstallmentCount - installmentCount;
+        BigDecimal remaining = remainingAmount.subtract(paidAmount);
+        return new LoanSummary(paidInstallmentCount + installmentCount,
+                               remaining,
+                               unpaidCount == 0 ? null : nextDueDate.plusMonths(installmentCount),
+                               unpaidCount == 0 ? null : unpaidCount == 1 ? remaining : nextInstallmentAmount,
+                               unpaidCount == 0);
+    }
+
+    public void applySummary(LoanSummary summary) {
+        paidInstallmentCount = summary.paidInstallmentCount();
+        remainingAmount = summary.remainingAmount();
+        nextDueDate = summary.nextDueDate();
+        nextInstallmentAmount = summary.nextInstallmentAmount();
+        paid = summary.paid();
+    }
+
     @Override
     public String toString() {
         return "Loan{" +
                 "id=" + id +
-                ", customer=" + customer +
+                ", customerId=" + (customer == null ? null : customer.getId()) +
                 ", loanAmount=" + loanAmount +
                 ", interestRate=" + interestRate +
                 ", numberOfInstallment=" + numberOfInstallment +
                 ", paid=" + paid +
+                ", paidInstallmentCount=" + paidInstallmentCount +
+                ", remainingAmount=" + remainingAmount +
+                ", nextDueDate=" + nextDueDate +
+                ", nextInstallmentAmount=" + nextInstallmentAmount +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.inghub.credit.domain;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//the running summary of a loan after a payment, stored on the loan row by a direct payment and on the ledger entry
+//by a ledger payment. nextDueDate and nextInstallmentAmount are null once the loan is paid
+public record LoanSummary(int paidInstallmentCount,
+                          BigDecimal remainingAmount,
+                          LocalDate nextDueDate,
+                          BigDecimal nextInstallmentAmount,
+                          boolean paid) {
+
+}
@@ -0,0 +1,82 @@
+package com.inghub.credit.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+//one payment of a loan, never changed after the insert except for projectionDate or projectionError. The summary
+//columns are the state of the loan after the payment
+@Getter
+@Setter
+@Entity
+@Table(name = "payment_ledger")
+public class PaymentLedgerEntry extends AbstractEntity {
+
+    //assigned by the insert, so entries of one loan are numbered in the order their payments read each other, which
+    //a pooled sequence shared by several nodes would not guarantee. A payment is a single statement as well
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "loan_id", nullable = false)
+    private Long loanId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    //1-based number of the first installment paid, in due date order
+    @Column(name = "first_installment", columnDefinition = "SMALLINT", nullable = false)
+    private int firstInstallment;
+
+    @Column(name = "installment_count", columnDefinition = "SMALLINT", nullable = false)
+    private int installmentCount;
+
+    @Column(name = "paid_amount", nullable = false)
+    private BigDecimal paidAmount;
+
+    @Column(name = "last_due_date", nullable = false)
+    private LocalDate lastDueDate;
+
+    @Column(name = "remaining_amount", nullable = false)
+    private BigDecimal remainingAmount;
+
+    @Column(name = "next_due_date")
+    private LocalDate nextDueDate;
+
+    @Column(name = "next_installment_amount")
+    private BigDecimal nextInstallmentAmount;
+
+    @Column(name = "is_loan_paid", nullable = false)
+    private boolean loanPaid;
+
+    @Column(name = "projection_date")
+    private LocalDateTime projectionDate;
+
+    //the entry and the later entries of its loan are left out of the projection until it is cleared
+    @Column(name = "projection_error")
+    private String projectionError;
+
+    public int getLastInstallment() {
+        return firstInstallment + installmentCount - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentLedgerEntry{" +
+                "id=" + id +
+                ", loanId=" + loanId +
+                ", customerId=" + customerId +
+                ", firstInstallment=" + firstInstallment +
+                ", installmentCount=" + installmentCount +
+                ", paidAmount=" + paidAmount +
+                ", loanPaid=" + loanPaid +
+                ", projectionDate=" + projectionDate +
+                ", projectionError='" + projectionError + '\'' +
+                '}';
+    }
+}
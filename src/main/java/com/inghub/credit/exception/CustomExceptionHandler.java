@@ -1,5 +1,7 @@
 package com.inghub.credit.exception;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
@@ -11,10 +13,14 @@ import org.springframework.web.context.request.WebRequest;
 import java.util.Date;
 
 @ControllerAdvice
+@RequiredArgsConstructor
 public class CustomExceptionHandler {
 
+    private final MeterRegistry meterRegistry;
+
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<ErrorResponse> resourceNotFoundException(ResourceNotFoundException ex, WebRequest request) {
+        countException(ex, HttpStatus.NOT_FOUND);
         ErrorResponse message = new ErrorResponse(new Date(),
                                                   HttpStatus.NOT_FOUND.value(),
                                                   ex.getMessage(),
@@ -25,6 +31,7 @@ public class CustomExceptionHandler {
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> globalExceptionHandler(Exception ex, WebRequest request) {
+        countException(ex, HttpStatus.INTERNAL_SERVER_ERROR);
         ErrorResponse message = new ErrorResponse(new Date(),
                                                   HttpStatus.INTERNAL_SERVER_ERROR.value(),
                                                   ex.getMessage(),
@@ -35,6 +42,7 @@ public class CustomExceptionHandler {
 
     @ExceptionHandler(BindException.class)
     public ResponseEntity<ErrorResponse> bindingException(BindException ex, WebRequest request) {
+        countException(ex, HttpStatus.INTERNAL_SERVER_ERROR);
         BindingErrorsResponse errors = new BindingErrorsResponse();
         errors.addAllErrors(ex.getBindingResult());
 
@@ -46,4 +54,9 @@ public class CustomExceptionHandler {
 
         return new ResponseEntity<>(message, HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    //error responses by exception type, so credit rule failures and missing resources can be alerted on separately
+    private void countException(Exception ex, HttpStatus status) {
+        meterRegistry.counter("credit.api.errors", "exception", ex.getClass().getSimpleName(), "status", String.valueOf(status.value())).increment();
+    }
 }
@@ -0,0 +1,40 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.repository.IdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Deletes idempotency keys claimed longer than {@code credit.idempotency.retention} ago, a retry after that runs the
+ * request again. Runs on {@code credit.idempotency.purge-cron}.
+ */
+@Component
+@Slf4j
+public class IdempotencyKeyPurgeJob {
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Duration retention;
+
+    public IdempotencyKeyPurgeJob(IdempotencyKeyRepository idempotencyKeyRepository,
+                                  @Value("${credit.idempotency.retention}") Duration retention) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.retention = retention;
+    }
+
+    @Scheduled(cron = "${credit.idempotency.purge-cron}")
+    public void runScheduled() {
+        run();
+    }
+
+    public int run() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(retention);
+        int deletedCount = idempotencyKeyRepository.deleteCreatedBefore(createdBefore);
+        log.info("Purged {} idempotency keys created before {}", deletedCount, createdBefore);
+        return deletedCount;
+    }
+}
@@ -0,0 +1,40 @@
+package com.inghub.credit.job;
+
+import java.util.Arrays;
+
+// latencies of one worker without boxing, merged and sorted once at the end of the job
+class LatencyRecorder {
+
+    private long[] values = new long[1024];
+    private int size;
+
+    void record(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+    }
+
+    static long[] mergeSorted(Iterable<LatencyRecorder> recorders) {
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.size;
+        }
+        long[] merged = new long[total];
+        int position = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.values, 0, merged, position, recorder.size);
+            position += recorder.size;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+}
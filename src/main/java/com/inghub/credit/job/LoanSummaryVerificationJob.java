@@ -0,0 +1,128 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.model.dto.LoanSummaryCheckRow;
+import com.inghub.credit.repository.LoanInstallmentRepository;
+import com.inghub.credit.util.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Checks the summary columns of every loan against its installment rows: paid flag, paid installment count,
+ * remaining amount and the due date and amount of the first unpaid installment.
+ * <p>
+ * The rows are streamed in loan and due date order in one read-only transaction, so memory does not grow with the
+ * number of loans. Mismatches are logged with both values and counted in {@code credit.loan.summary.mismatches},
+ * they are not repaired. Runs on {@code credit.loan.summary-verification.cron}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LoanSummaryVerificationJob {
+
+    private static final int MAX_REPORTED_LOAN_IDS = 100;
+
+    private final LoanInstallmentRepository loanInstallmentRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Scheduled(cron = "${credit.loan.summary-verification.cron}")
+    public void runScheduled() {
+        run();
+    }
+
+    public LoanSummaryVerificationResult run() {
+        log.info("Starting loan summary verification");
+        long startNanos = System.nanoTime();
+
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        SummaryCheck check = readOnlyTransaction.execute(status -> {
+            SummaryCheck summaryCheck = new SummaryCheck();
+            try (Stream<LoanSummaryCheckRow> rows = loanInstallmentRepository.streamLoanSummaryCheckRows()) {
+                rows.forEach(summaryCheck::add);
+            }
+            summaryCheck.finishLoan();
+            return summaryCheck;
+        });
+
+        meterRegistry.counter("credit.loan.summary.mismatches").increment(check.mismatchedLoanCount);
+        LoanSummaryVerificationResult result = new LoanSummaryVerificationResult(check.checkedLoanCount, check.mismatchedLoanCount,
+                                                                                 List.copyOf(check.mismatchedLoanIds), (System.nanoTime() - startNanos) / 1_000_000);
+        if (result.mismatchedLoanCount() > 0) {
+            log.warn("Loan summary verification found mismatches: {}", result);
+        } else {
+            log.info("Loan summary verification completed: {}", result);
+        }
+        return result;
+    }
+
+    //folds the installment rows of one loan at a time and compares them with its summary when the next loan starts
+    private static final class SummaryCheck {
+
+        private long checkedLoanCount;
+        private long mismatchedLoanCount;
+        private final List<Long> mismatchedLoanIds = new ArrayList<>();
+
+        private LoanSummaryCheckRow loan;
+        private int paidCount;
+        private long remainingAmount;
+        private LocalDate nextDueDate;
+        private Long nextInstallmentAmount;
+
+        void add(LoanSummaryCheckRow row) {
+            if (loan == null || !loan.loanId().equals(row.loanId())) {
+                finishLoan();
+                loan = row;
+                paidCount = 0;
+                remainingAmount = 0;
+                nextDueDate = null;
+                nextInstallmentAmount = null;
+            }
+            if (row.paid()) {
+                paidCount++;
+                return;
+            }
+            remainingAmount += Money.toMinorUnits(row.amount());
+            if (nextDueDate == null) {
+                nextDueDate = row.dueDate();
+                nextInstallmentAmount = Money.toMinorUnits(row.amount());
+            }
+        }
+
+        void finishLoan() {
+            if (loan == null) {
+                return;
+            }
+            checkedLoanCount++;
+            Long summaryNextInstallmentAmount = loan.nextInstallmentAmount() == null ? null : Money.toMinorUnits(loan.nextInstallmentAmount());
+            boolean matches = loan.loanPaid() == (nextDueDate == null)
+                    && loan.paidInstallmentCount() == paidCount
+                    && Money.toMinorUnits(loan.remainingAmount()) == remainingAmount
+                    && Objects.equals(loan.nextDueDate(), nextDueDate)
+                    && Objects.equals(summaryNextInstallmentAmount, nextInstallmentAmount);
+            if (!matches) {
+                log.warn("Summary of loan {} does not match its installments. Summary: paid={}, paidInstallmentCount={}, remainingAmount={}, nextDueDate={}, nextInstallmentAmount={}. " +
+                                 "Installments: paid={}, paidInstallmentCount={}, remainingAmount={}, nextDueDate={}, nextInstallmentAmount={}",
+                         loan.loanId(), loan.loanPaid(), loan.paidInstallmentCount(), loan.remainingAmount(), loan.nextDueDate(), loan.nextInstallmentAmount(),
+                         nextDueDate == null, paidCount, Money.toAmount(remainingAmount), nextDueDate,
+                         nextInstallmentAmount == null ? null : Money.toAmount(nextInstallmentAmount));
+                mismatchedLoanCount++;
+                if (mismatchedLoanIds.size() < MAX_REPORTED_LOAN_IDS) {
+                    mismatchedLoanIds.add(loan.loanId());
+                }
+            }
+            loan = null;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.inghub.credit.job;
+
+import java.util.List;
+
+// mismatchedLoanIds holds the first mismatched loans only, mismatchedLoanCount counts all of them
+public record LoanSummaryVerificationResult(long checkedLoanCount,
+                                            long mismatchedLoanCount,
+                                            List<Long> mismatchedLoanIds,
+                                            long elapsedMillis) {
+}
@@ -0,0 +1,242 @@
+package com.inghub.credit.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.inghub.credit.model.PayLoanRequest;
+import com.inghub.credit.model.PayLoanResponse;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import com.inghub.credit.service.LoanPaymentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Replays a settlement file of {@code (loanId, paidAmount)} records through {@link LoanPaymentService#payLoan}.
+ * <p>
+ * The file is read line by line, either CSV ({@code loanId,paidAmount} with an optional header) or NDJSON
+ * ({@code {"loanId":1,"paidAmount":100.00}}). Records are partitioned by loan id into bounded worker queues, so the
+ * payments of one loan are applied in file order while different loans are paid in parallel and the reader blocks
+ * instead of buffering the file. Each worker pays what is queued, up to the batch size, in one transaction, which is run
+ * again on a concurrent update. When a payment of the batch fails, the batch is rolled back and its payments are applied
+ * one transaction each through {@link LoanPaymentService#payLoan}, which retries its own conflicts.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PaymentFileJob {
+
+    private static final ObjectReader PAYMENT_READER = new ObjectMapper().readerFor(PayLoanRequest.class);
+    private static final long ENQUEUE_CHECK_INTERVAL_MILLIS = 100;
+
+    private final LoanPaymentService loanPaymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ConflictRetryTemplate conflictRetryTemplate;
+
+    @Value("${credit.payment-file.workers}")
+    private int workerCount;
+
+    @Value("${credit.payment-file.batch-size}")
+    private int batchSize;
+
+    @Value("${credit.payment-file.queue-capacity}")
+    private int queueCapacity;
+
+    public PaymentFileJobResult run(Path inputFile, Path resultFile) throws IOException, InterruptedException {
+        log.info("Starting payment file job for {} with {} workers and batch size {}", inputFile, workerCount, batchSize);
+        long startNanos = System.nanoTime();
+
+        List<BlockingQueue<PaymentRecord>> partitions = new ArrayList<>(workerCount);
+        List<Future<PaymentWorker>> workers = new ArrayList<>(workerCount);
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        long recordCount = 0;
+        long parseFailureCount = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8);
+             PaymentResultWriter resultWriter = new PaymentResultWriter(Files.newBufferedWriter(resultFile, StandardCharsets.UTF_8))) {
+
+            for (int i = 0; i < workerCount; i++) {
+                BlockingQueue<PaymentRecord> partition = new ArrayBlockingQueue<>(queueCapacity);
+                partitions.add(partition);
+                PaymentWorker worker = new PaymentWorker(partition, resultWriter);
+                workers.add(executor.submit(worker::run, worker));
+            }
+
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || isCsvHeader(lineNumber, line)) {
+                    continue;
+                }
+
+                recordCount++;
+                PaymentRecord paymentRecord;
+                try {
+                    paymentRecord = parseLine(lineNumber, line);
+                } catch (IOException | RuntimeException e) {
+                    parseFailureCount++;
+                    resultWriter.writeFailure(lineNumber, null, null, "Invalid payment record: " + e.getMessage());
+                    continue;
+                }
+                int partition = Math.floorMod(paymentRecord.loanId().hashCode(), workerCount);
+                enqueue(partitions.get(partition), workers.get(partition), paymentRecord);
+            }
+
+            for (int i = 0; i < workerCount; i++) {
+                enqueue(partitions.get(i), workers.get(i), PaymentRecord.END);
+            }
+
+            List<PaymentWorker> completedWorkers = new ArrayList<>(workerCount);
+            for (Future<PaymentWorker> worker : workers) {
+                completedWorkers.add(worker.get());
+            }
+            return summarize(recordCount, parseFailureCount, completedWorkers, System.nanoTime() - startNanos);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Payment file worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // waits for room in the queue of the worker, unless the worker has stopped and nothing drains the queue anymore
+    private static void enqueue(BlockingQueue<PaymentRecord> partition, Future<PaymentWorker> worker, PaymentRecord paymentRecord)
+            throws InterruptedException, ExecutionException {
+        while (!partition.offer(paymentRecord, ENQUEUE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (worker.isDone()) {
+                worker.get();
+                throw new IllegalStateException("Payment file worker stopped before the end of the file");
+            }
+        }
+    }
+
+    private PaymentFileJobResult summarize(long recordCount, long parseFailureCount, List<PaymentWorker> workers, long elapsedNanos) {
+        long successCount = workers.stream().mapToLong(worker -> worker.successCount).sum();
+        long[] latencies = LatencyRecorder.mergeSorted(workers.stream().map(worker -> worker.latencyRecorder).toList());
+        double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+
+        PaymentFileJobResult result = new PaymentFileJobResult(recordCount, successCount, recordCount - successCount,
+                                                               elapsedNanos / 1_000_000, elapsedSeconds == 0 ? 0 : recordCount / elapsedSeconds,
+                                                               LatencyRecorder.percentileMillis(latencies, 50),
+                                                               LatencyRecorder.percentileMillis(latencies, 99),
+                                                               LatencyRecorder.percentileMillis(latencies, 100));
+        log.info("Payment file job completed, {} records with {} parse failures: {}", recordCount, parseFailureCount, result);
+        return result;
+    }
+
+    private static boolean isCsvHeader(long lineNumber, String line) {
+        return lineNumber == 1 && !line.stripLeading().startsWith("{") && !Character.isDigit(line.strip().charAt(0));
+    }
+
+    private static PaymentRecord parseLine(long lineNumber, String line) throws IOException {
+        Long loanId;
+        BigDecimal paidAmount;
+        if (line.stripLeading().startsWith("{")) {
+            PayLoanRequest request = PAYMENT_READER.readValue(line);
+            loanId = request.loanId();
+            paidAmount = request.paidAmount();
+        } else {
+            String[] fields = line.split(",");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("expected loanId,paidAmount");
+            }
+            loanId = Long.valueOf(fields[0].strip());
+            paidAmount = new BigDecimal(fields[1].strip());
+        }
+
+        if (loanId == null || paidAmount == null) {
+            throw new IllegalArgumentException("loanId and paidAmount are required");
+        }
+        return new PaymentRecord(lineNumber, loanId, paidAmount, System.nanoTime());
+    }
+
+    // Pays the records of one partition. Failures are written to the results file, so a worker only stops at the end marker
+    private class PaymentWorker {
+
+        private final BlockingQueue<PaymentRecord> partition;
+        private final PaymentResultWriter resultWriter;
+        private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+        private long successCount;
+
+        PaymentWorker(BlockingQueue<PaymentRecord> partition, PaymentResultWriter resultWriter) {
+            this.partition = partition;
+            this.resultWriter = resultWriter;
+        }
+
+        void run() {
+            List<PaymentRecord> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    PaymentRecord paymentRecord = partition.take();
+                    if (paymentRecord == PaymentRecord.END) {
+                        break;
+                    }
+                    batch.add(paymentRecord);
+                    //does not wait for a full batch when the reader is slower than the worker
+                    if (batch.size() >= batchSize || partition.peek() == null) {
+                        payBatch(batch);
+                        batch.clear();
+                    }
+                }
+                payBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Payment file worker interrupted", e);
+            }
+        }
+
+        private void payBatch(List<PaymentRecord> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            List<PayLoanResponse> responses;
+            try {
+                responses = conflictRetryTemplate.execute("PaymentFileJob.payBatch",
+                                                          () -> transactionTemplate.execute(status -> batch.stream().map(this::pay).toList()));
+            } catch (RuntimeException e) {
+                log.warn("Payment batch of {} records rolled back, paying them one by one. Reason: {}", batch.size(), e.getMessage());
+                batch.forEach(this::payInOwnTransaction);
+                return;
+            }
+
+            long commitNanos = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++) {
+                recordSuccess(batch.get(i), responses.get(i), commitNanos);
+            }
+        }
+
+        //payLoan opens its own transaction, outside of a surrounding one it retries a concurrent update
+        private void payInOwnTransaction(PaymentRecord paymentRecord) {
+            try {
+                PayLoanResponse response = pay(paymentRecord);
+                recordSuccess(paymentRecord, response, System.nanoTime());
+            } catch (RuntimeException e) {
+                log.error("Payment at line {} for loanId: {} failed: {}", paymentRecord.lineNumber(), paymentRecord.loanId(), e.getMessage());
+                latencyRecorder.record(System.nanoTime() - paymentRecord.readNanos());
+                resultWriter.writeFailure(paymentRecord.lineNumber(), paymentRecord.loanId(), paymentRecord.paidAmount(), e.getMessage());
+            }
+        }
+
+        private PayLoanResponse pay(PaymentRecord paymentRecord) {
+            return loanPaymentService.payLoan(paymentRecord.loanId(), paymentRecord.paidAmount());
+        }
+
+        private void recordSuccess(PaymentRecord paymentRecord, PayLoanResponse response, long commitNanos) {
+            successCount++;
+            latencyRecorder.record(commitNanos - paymentRecord.readNanos());
+            resultWriter.writeSuccess(paymentRecord, response);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.inghub.credit.job;
+
+// latencies are measured from reading a record to committing its payment
+public record PaymentFileJobResult(long recordCount,
+                                   long successCount,
+                                   long failureCount,
+                                   long elapsedMillis,
+                                   double recordsPerSecond,
+                                   double p50LatencyMillis,
+                                   double p99LatencyMillis,
+                                   double maxLatencyMillis) {
+}
@@ -0,0 +1,34 @@
+package com.inghub.credit.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+//runs the payment file job on startup when an input file is given, e.g. --credit.payment-file.input=payments.csv
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty("credit.payment-file.input")
+public class PaymentFileJobRunner implements ApplicationRunner {
+
+    private final PaymentFileJob paymentFileJob;
+
+    @Value("${credit.payment-file.input}")
+    private Path inputFile;
+
+    @Value("${credit.payment-file.output:}")
+    private String outputFile;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        Path resultFile = outputFile.isBlank() ? Path.of(inputFile + ".results.csv") : Path.of(outputFile);
+        PaymentFileJobResult result = paymentFileJob.run(inputFile, resultFile);
+        log.info("Payment file results written to {}: {}", resultFile, result);
+    }
+}
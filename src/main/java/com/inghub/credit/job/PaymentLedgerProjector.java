@@ -0,0 +1,203 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.domain.PaymentLedgerEntry;
+import com.inghub.credit.repository.LoanRepository;
+import com.inghub.credit.repository.PaymentLedgerRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import com.inghub.credit.service.CustomerService;
+import com.inghub.credit.service.LoanInstallmentService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies the entries of the payment ledger to the used credit limit of the customers, the loan summaries and the
+ * installments, in batches of {@code credit.loan.payment-ledger.batch-size} entries in id order. Runs
+ * {@code credit.loan.payment-ledger.projection-delay} after the previous run ended, also when the ledger mode is off,
+ * so entries appended before it was turned off are still applied.
+ * <p>
+ * A batch is one transaction: one limit update per customer, one summary update per loan from the state before its
+ * first entry to the state after its last one, one installment update per loan, then the entries are stamped with
+ * their projection date. Progress is kept on the entries instead of as the id of the last projected entry, because
+ * ids are assigned at insert and a payment with a lower id can commit after a higher one was projected. The summary
+ * update is conditional on the paid installment count before the first entry, so a batch applied concurrently by
+ * another node fails and is retried with the entries left.
+ * <p>
+ * A batch that still fails is applied again loan by loan, each loan in its own transaction. The entries of a loan that
+ * fails on its own get a projection error and are left out until it is cleared ({@code credit.loan.payment.ledger.failed}),
+ * so one loan does not hold back the payments of every other loan.
+ */
+@Component
+@Slf4j
+public class PaymentLedgerProjector {
+
+    private static final int MAX_PROJECTION_ERROR_LENGTH = 1000;
+
+    private final PaymentLedgerRepository paymentLedgerRepository;
+    private final LoanRepository loanRepository;
+    private final LoanInstallmentService loanInstallmentService;
+    private final CustomerService customerService;
+    private final ConflictRetryTemplate conflictRetryTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Counter projectedCounter;
+    private final Counter failedCounter;
+    private final Timer lagTimer;
+
+    public PaymentLedgerProjector(PaymentLedgerRepository paymentLedgerRepository,
+                                  LoanRepository loanRepository,
+                                  LoanInstallmentService loanInstallmentService,
+                                  CustomerService customerService,
+                                  ConflictRetryTemplate conflictRetryTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${credit.loan.payment-ledger.batch-size}") int batchSize) {
+        this.paymentLedgerRepository = paymentLedgerRepository;
+        this.loanRepository = loanRepository;
+        this.loanInstallmentService = loanInstallmentService;
+        this.customerService = customerService;
+        this.conflictRetryTemplate = conflictRetryTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.projectedCounter = Counter.builder("credit.loan.payment.ledger.projected")
+                .description("Payment ledger entries applied to the loans")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("credit.loan.payment.ledger.failed")
+                .description("Payment ledger entries left out of the projection after their loan failed")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("credit.loan.payment.ledger.lag")
+                .description("Time from appending a payment to applying it to its loan")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${credit.loan.payment-ledger.projection-delay}")
+    public void runScheduled() {
+        run();
+    }
+
+    // projects until the ledger is drained and returns the number of projected entries
+    public int run() {
+        int projectedCount = 0;
+        int batchCount;
+        do {
+            BatchResult batchResult = projectBatch();
+            batchCount = batchResult.entryCount();
+            projectedCount += batchResult.projectedCount();
+        } while (batchCount == batchSize);
+        if (projectedCount > 0) {
+            log.debug("Projected {} payment ledger entries", projectedCount);
+        }
+        return projectedCount;
+    }
+
+    private BatchResult projectBatch() {
+        try {
+            int projectedCount = conflictRetryTemplate.execute("PaymentLedgerProjector.run", () -> transactionTemplate.execute(status ->
+                    project(paymentLedgerRepository.findUnprojected(PageRequest.of(0, batchSize)))));
+            return new BatchResult(projectedCount, projectedCount);
+        } catch (CannotCreateTransactionException | DataAccessResourceFailureException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("Payment ledger batch failed, projecting it loan by loan. Reason: {}", e.getMessage());
+        }
+
+        List<PaymentLedgerEntry> entries = paymentLedgerRepository.findUnprojected(PageRequest.of(0, batchSize));
+        Map<Long, List<PaymentLedgerEntry>> entriesByLoan = new TreeMap<>();
+        for (PaymentLedgerEntry entry : entries) {
+            entriesByLoan.computeIfAbsent(entry.getLoanId(), loanId -> new ArrayList<>()).add(entry);
+        }
+        int projectedCount = 0;
+        for (Map.Entry<Long, List<PaymentLedgerEntry>> loanEntries : entriesByLoan.entrySet()) {
+            projectedCount += projectLoanOnItsOwn(loanEntries.getKey(), loanEntries.getValue());
+        }
+        return new BatchResult(entries.size(), projectedCount);
+    }
+
+    private int projectLoanOnItsOwn(Long loanId, List<PaymentLedgerEntry> loanEntries) {
+        try {
+            return conflictRetryTemplate.execute("PaymentLedgerProjector.run", () -> transactionTemplate.execute(status -> project(loanEntries)));
+        } catch (CannotCreateTransactionException | DataAccessResourceFailureException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("Payment ledger entries of loan with ID: {} could not be projected and are left out: {}", loanId, e.getMessage());
+            String projectionError = StringUtils.abbreviate(e.getClass().getSimpleName() + ": " + e.getMessage(), MAX_PROJECTION_ERROR_LENGTH);
+            Integer failedCount = transactionTemplate.execute(status -> paymentLedgerRepository.markFailed(loanId, projectionError, LocalDateTime.now()));
+            failedCounter.increment(failedCount == null ? 0 : failedCount);
+            return 0;
+        }
+    }
+
+    private int project(List<PaymentLedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        //sorted, so concurrent batches and payments lock customers and loans in the same order
+        Map<Long, BigDecimal> paidAmountByCustomer = new TreeMap<>();
+        Map<Long, List<PaymentLedgerEntry>> entriesByLoan = new TreeMap<>();
+        for (PaymentLedgerEntry entry : entries) {
+            paidAmountByCustomer.merge(entry.getCustomerId(), entry.getPaidAmount(), BigDecimal::add);
+            entriesByLoan.computeIfAbsent(entry.getLoanId(), loanId -> new ArrayList<>()).add(entry);
+        }
+
+        paidAmountByCustomer.forEach(customerService::decreaseCustomerUsedCreditLimit);
+        LocalDateTime projectionDate = LocalDateTime.now();
+        entriesByLoan.forEach((loanId, loanEntries) -> projectLoan(loanId, loanEntries, projectionDate));
+        entriesByLoan.forEach((loanId, loanEntries) -> {
+            PaymentLedgerEntry lastEntry = loanEntries.get(loanEntries.size() - 1);
+            loanInstallmentService.payLoanInstallmentsDueUntil(loanId, lastEntry.getLastDueDate(), installmentCount(loanEntries));
+        });
+
+        List<Long> ids = entries.stream().map(PaymentLedgerEntry::getId).toList();
+        if (paymentLedgerRepository.markProjected(ids, projectionDate) != ids.size()) {
+            throw new OptimisticLockingFailureException("Payment ledger entries were projected by another run: " + ids);
+        }
+        projectedCounter.increment(entries.size());
+        for (PaymentLedgerEntry entry : entries) {
+            lagTimer.record(Duration.between(entry.getCreateDate(), projectionDate));
+        }
+        return entries.size();
+    }
+
+    //entries of a loan follow each other in id order, each one continues from the summary the previous one left
+    private void projectLoan(Long loanId, List<PaymentLedgerEntry> loanEntries, LocalDateTime projectionDate) {
+        PaymentLedgerEntry firstEntry = loanEntries.get(0);
+        PaymentLedgerEntry lastEntry = loanEntries.get(loanEntries.size() - 1);
+        BigDecimal paidAmount = loanEntries.stream().map(PaymentLedgerEntry::getPaidAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        int updatedCount = loanRepository.recordPayment(loanId, firstEntry.getFirstInstallment() - 1, installmentCount(loanEntries), paidAmount,
+                                                        lastEntry.getNextDueDate(), lastEntry.getNextInstallmentAmount(), lastEntry.isLoanPaid(),
+                                                        projectionDate);
+        if (updatedCount == 0) {
+            log.warn("Summary of loan with ID: {} is not at installment {} of its ledger", loanId, firstEntry.getFirstInstallment() - 1);
+            throw new OptimisticLockingFailureException("Loan summary does not continue with its payment ledger, loanId: " + loanId);
+        }
+    }
+
+    private static int installmentCount(List<PaymentLedgerEntry> loanEntries) {
+        return loanEntries.stream().mapToInt(PaymentLedgerEntry::getInstallmentCount).sum();
+    }
+
+    //entryCount is the number of entries read, so a full batch is followed by the next one also when some failed
+    private record BatchResult(int entryCount, int projectedCount) {
+    }
+}
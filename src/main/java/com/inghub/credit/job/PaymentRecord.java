@@ -0,0 +1,10 @@
+package com.inghub.credit.job;
+
+import java.math.BigDecimal;
+
+// one payment of the input file, readNanos is used for the read to commit latency
+record PaymentRecord(long lineNumber, Long loanId, BigDecimal paidAmount, long readNanos) {
+
+    // marks the end of the input in every partition queue
+    static final PaymentRecord END = new PaymentRecord(-1, null, null, 0);
+}
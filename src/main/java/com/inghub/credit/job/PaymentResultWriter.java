@@ -0,0 +1,57 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.model.PayLoanResponse;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// results are written in completion order by all workers, the line number ties them back to the input
+class PaymentResultWriter implements Closeable {
+
+    static final String HEADER = "lineNumber,loanId,paidAmount,status,paidInstallmentCount,totalAmountSpent,loanPaidCompletely,error";
+
+    private final BufferedWriter writer;
+    // a monitor held while writing would pin a virtual thread to its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    PaymentResultWriter(BufferedWriter writer) throws IOException {
+        this.writer = writer;
+        writer.write(HEADER);
+        writer.newLine();
+    }
+
+    void writeSuccess(PaymentRecord paymentRecord, PayLoanResponse response) {
+        write(paymentRecord.lineNumber() + "," + paymentRecord.loanId() + "," + paymentRecord.paidAmount() + ",PAID," +
+                      response.paidInstallmentCount() + "," + response.totalAmountSpent() + "," + response.loanPaidCompletely() + ",");
+    }
+
+    void writeFailure(long lineNumber, Long loanId, Object paidAmount, String errorMessage) {
+        write(lineNumber + "," + (loanId == null ? "" : loanId) + "," + (paidAmount == null ? "" : paidAmount) + ",FAILED,,,," +
+                      "\"" + String.valueOf(errorMessage).replace("\"", "\"\"") + "\"");
+    }
+
+    private void write(String line) {
+        lock.lock();
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            writer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
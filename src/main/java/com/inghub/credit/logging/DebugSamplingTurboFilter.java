@@ -0,0 +1,44 @@
+package com.inghub.credit.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accepts the DEBUG events of the configured loggers, and their children, while a request sampled by
+ * {@link RequestSummaryFilter} is handled, whatever the logger level is. Every other event is left to the logger levels.
+ * <pre>
+ * &lt;turboFilter class="com.inghub.credit.logging.DebugSamplingTurboFilter"&gt;
+ *     &lt;logger&gt;com.inghub.credit&lt;/logger&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class DebugSamplingTurboFilter extends TurboFilter {
+
+    private final List<String> loggerNames = new ArrayList<>();
+
+    // called by logback for every <logger> element
+    public void addLogger(String loggerName) {
+        loggerNames.add(loggerName);
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        //runs for every log statement, the level check keeps the INFO path cheap
+        if (level != Level.DEBUG || MDC.get(RequestSummaryFilter.SAMPLED_MDC_KEY) == null) {
+            return FilterReply.NEUTRAL;
+        }
+        for (String loggerName : loggerNames) {
+            if (logger.getName().startsWith(loggerName)) {
+                return FilterReply.ACCEPT;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
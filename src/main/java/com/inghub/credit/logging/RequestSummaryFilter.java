@@ -0,0 +1,71 @@
+package com.inghub.credit.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes one INFO line per request with its method, path, status and duration, the service layer logs its steps at DEBUG.
+ * <p>
+ * A {@code credit.logging.debug-sample-rate} share of the requests is marked as sampled in the MDC, and
+ * {@link DebugSamplingTurboFilter} lets the DEBUG lines of those requests through, so complete traces of a few requests
+ * are logged without turning DEBUG on for all of them.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestSummaryFilter extends OncePerRequestFilter {
+
+    public static final String SAMPLED_MDC_KEY = "sampled";
+
+    private static final String START_NANOS_ATTRIBUTE = RequestSummaryFilter.class.getName() + ".startNanos";
+    private static final String SAMPLED_ATTRIBUTE = RequestSummaryFilter.class.getName() + ".sampled";
+
+    private final double debugSampleRate;
+
+    public RequestSummaryFilter(@Value("${credit.logging.debug-sample-rate}") double debugSampleRate) {
+        this.debugSampleRate = debugSampleRate;
+    }
+
+    // streamed responses such as the loan export are summarized when their async dispatch completes
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        //the async dispatch keeps the start time and sampling decision of the initial dispatch
+        Long startNanos = (Long) request.getAttribute(START_NANOS_ATTRIBUTE);
+        if (startNanos == null) {
+            startNanos = System.nanoTime();
+            request.setAttribute(START_NANOS_ATTRIBUTE, startNanos);
+            request.setAttribute(SAMPLED_ATTRIBUTE, debugSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < debugSampleRate);
+        }
+        boolean sampled = (Boolean) request.getAttribute(SAMPLED_ATTRIBUTE);
+
+        if (sampled) {
+            MDC.put(SAMPLED_MDC_KEY, "true");
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(SAMPLED_MDC_KEY);
+            if (!request.isAsyncStarted()) {
+                log.info("request method={} path={} status={} durationMs={} sampled={}", request.getMethod(), request.getRequestURI(),
+                         response.getStatus(), (System.nanoTime() - startNanos) / 1_000_000, sampled);
+            }
+        }
+    }
+}
@@ -1,10 +1,27 @@
 package com.inghub.credit.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public record ApiModelPage(@JsonProperty("pageNumber") int pageNumber, @JsonProperty("pageSize") int pageSize,
-                           @JsonProperty("totalNumberOfRecords") long totalNumberOfRecords,
-                           @JsonProperty("totalNumberOfPages") int totalNumberOfPages,
+// Totals are left out when they are not requested and in cursor mode, nextCursor is only present in cursor mode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ApiModelPage(@JsonProperty("pageNumber") Integer pageNumber, @JsonProperty("pageSize") int pageSize,
+                           @JsonProperty("totalNumberOfRecords") Long totalNumberOfRecords,
+                           @JsonProperty("totalNumberOfPages") Integer totalNumberOfPages,
                            @JsonProperty("hasNextPage") boolean hasNextPage,
-                           @JsonProperty("hasPreviousPage") boolean hasPreviousPage) {
-}
\ No newline at end of file
+                           @JsonProperty("hasPreviousPage") boolean hasPreviousPage,
+                           @JsonProperty("nextCursor") String nextCursor) {
+
+    public ApiModelPage(int pageNumber, int pageSize, long totalNumberOfRecords, int totalNumberOfPages,
+                        boolean hasNextPage, boolean hasPreviousPage) {
+        this(pageNumber, pageSize, totalNumberOfRecords, totalNumberOfPages, hasNextPage, hasPreviousPage, null);
+    }
+
+    public static ApiModelPage ofSlice(int pageNumber, int pageSize, boolean hasNextPage, boolean hasPreviousPage) {
+        return new ApiModelPage(pageNumber, pageSize, null, null, hasNextPage, hasPreviousPage, null);
+    }
+
+    public static ApiModelPage ofCursor(int pageSize, boolean hasNextPage, boolean hasPreviousPage, String nextCursor) {
+        return new ApiModelPage(null, pageSize, null, null, hasNextPage, hasPreviousPage, nextCursor);
+    }
+}
@@ -0,0 +1,19 @@
+package com.inghub.credit.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// index is the position of the item in the request array, loan is only present on success and errorMessage on failure
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CreateLoanBatchItemResult(int index,
+                                        boolean success,
+                                        CreateLoanResponse loan,
+                                        String errorMessage) {
+
+    public static CreateLoanBatchItemResult success(int index, CreateLoanResponse loan) {
+        return new CreateLoanBatchItemResult(index, true, loan, null);
+    }
+
+    public static CreateLoanBatchItemResult failure(int index, String errorMessage) {
+        return new CreateLoanBatchItemResult(index, false, null, errorMessage);
+    }
+}
@@ -0,0 +1,8 @@
+package com.inghub.credit.model;
+
+import java.util.List;
+
+public record CreateLoanBatchResponse(int successCount,
+                                      int failureCount,
+                                      List<CreateLoanBatchItemResult> results) {
+}
@@ -0,0 +1,20 @@
+package com.inghub.credit.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.inghub.credit.model.dto.LoanDTO;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+
+// one NDJSON line of the loan export, a loan line is followed by the lines of its installments
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record LoanExportLine(LoanDTO loan,
+                             Long loanId,
+                             LoanInstallmentDTO installment) {
+
+    public static LoanExportLine ofLoan(LoanDTO loan) {
+        return new LoanExportLine(loan, null, null);
+    }
+
+    public static LoanExportLine ofInstallment(Long loanId, LoanInstallmentDTO installment) {
+        return new LoanExportLine(null, loanId, installment);
+    }
+}
@@ -0,0 +1,11 @@
+package com.inghub.credit.model.dto;
+
+import java.math.BigDecimal;
+
+public record CustomerDTO(Long id,
+                          String name,
+                          String surname,
+                          BigDecimal creditLimit,
+                          BigDecimal usedCreditLimit) {
+
+}
@@ -2,6 +2,8 @@ package com.inghub.credit.model.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 public record LoanDTO(Long id, @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime insertDate,
@@ -9,6 +11,17 @@ public record LoanDTO(Long id, @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss") Loca
                       long customerId,
                       double loanAmount,
                       int numberOfInstallment,
-                      boolean isPaid) {
+                      boolean isPaid,
+                      int paidInstallmentCount,
+                      double remainingAmount,
+                      @JsonFormat(pattern = "yyyy-MM-dd") LocalDate nextDueDate,
+                      Double nextInstallmentAmount) {
 
-}
\ No newline at end of file
+    // column types of the projection queries, the next installment is null once the loan is paid
+    public LoanDTO(Long id, LocalDateTime insertDate, LocalDateTime updateDate, Long customerId, BigDecimal loanAmount,
+                   Integer numberOfInstallment, Boolean isPaid, Integer paidInstallmentCount, BigDecimal remainingAmount,
+                   LocalDate nextDueDate, BigDecimal nextInstallmentAmount) {
+        this(id, insertDate, updateDate, customerId, loanAmount.doubleValue(), numberOfInstallment, isPaid, paidInstallmentCount,
+             remainingAmount.doubleValue(), nextDueDate, nextInstallmentAmount == null ? null : nextInstallmentAmount.doubleValue());
+    }
+}
@@ -2,6 +2,7 @@ package com.inghub.credit.model.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -12,4 +13,9 @@ public record LoanInstallmentDTO(Long id, @JsonFormat(pattern = "yyyy-MM-dd HH:m
                                  @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime paymentDate,
                                  boolean isPaid) {
 
+    // column types of the projection queries
+    public LoanInstallmentDTO(Long id, LocalDateTime insertDate, LocalDateTime updateDate, BigDecimal amount, BigDecimal paidAmount,
+                              LocalDate dueDate, LocalDateTime paymentDate, Boolean isPaid) {
+        this(id, insertDate, updateDate, amount.doubleValue(), paidAmount.doubleValue(), dueDate, paymentDate, isPaid);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.inghub.credit.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// one installment joined with its loan, read by a constructor expression so the rows are never managed entities
+public record LoanInstallmentExportRow(Long loanId, LocalDateTime loanInsertDate, LocalDateTime loanUpdateDate,
+                                       BigDecimal loanAmount, Integer numberOfInstallment, boolean loanPaid,
+                                       Integer paidInstallmentCount, BigDecimal remainingAmount, LocalDate nextDueDate,
+                                       BigDecimal nextInstallmentAmount,
+                                       Long id, LocalDateTime insertDate, LocalDateTime updateDate,
+                                       BigDecimal amount, BigDecimal paidAmount, LocalDate dueDate,
+                                       LocalDateTime paymentDate, boolean paid) {
+
+}
@@ -0,0 +1,11 @@
+package com.inghub.credit.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// the summary columns of a loan joined with one of its installments
+public record LoanSummaryCheckRow(Long loanId, boolean loanPaid, Integer paidInstallmentCount, BigDecimal remainingAmount,
+                                  LocalDate nextDueDate, BigDecimal nextInstallmentAmount,
+                                  BigDecimal amount, LocalDate dueDate, boolean paid) {
+
+}
@@ -2,9 +2,31 @@ package com.inghub.credit.repository;
 
 import com.inghub.credit.domain.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
 
-}
\ No newline at end of file
+    // Limit check and reservation in one statement, returns 0 when the customer has not enough available limit
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update Customer c set c.usedCreditLimit = c.usedCreditLimit + :amount, c.updateDate = :updateDate, c.version = c.version + 1 " +
+            "where c.id = :customerId and c.creditLimit - c.usedCreditLimit >= :amount")
+    int increaseUsedCreditLimitIfAvailable(@Param("customerId") Long customerId, @Param("amount") BigDecimal amount,
+                                           @Param("updateDate") LocalDateTime updateDate);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update Customer c set c.usedCreditLimit = c.usedCreditLimit - :amount, c.updateDate = :updateDate, c.version = c.version + 1 " +
+            "where c.id = :customerId")
+    int decreaseUsedCreditLimit(@Param("customerId") Long customerId, @Param("amount") BigDecimal amount,
+                                @Param("updateDate") LocalDateTime updateDate);
+
+}
@@ -0,0 +1,53 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    // Claims the key for one execution, returns 0 when the key is already claimed. Two claims racing past the
+    // not exists check fail on the primary key instead
+    @Transactional
+    @Modifying
+    @Query(value = "insert into idempotency_key (idempotency_key, idate, operation, request_hash, is_completed) " +
+            "select :key, :claimDate, :operation, :requestHash, false from dual " +
+            "where not exists (select 1 from idempotency_key where idempotency_key = :key)", nativeQuery = true)
+    int claim(@Param("key") String key, @Param("operation") String operation, @Param("requestHash") String requestHash,
+              @Param("claimDate") LocalDateTime claimDate);
+
+    // Takes over a claim whose execution has not completed since staleBefore, its node is assumed to be gone
+    @Transactional
+    @Modifying
+    @Query("update IdempotencyKey k set k.createDate = :claimDate, k.version = k.version + 1 where k.key = :key and k.requestHash = :requestHash " +
+            "and k.completed = false and k.createDate < :staleBefore")
+    int claimStale(@Param("key") String key, @Param("requestHash") String requestHash, @Param("claimDate") LocalDateTime claimDate,
+                   @Param("staleBefore") LocalDateTime staleBefore);
+
+    // Stores the response in the transaction of the execution. Matches no row when the claim was taken over, which
+    // rolls the execution back instead of running it twice
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update IdempotencyKey k set k.completed = true, k.responseBody = :responseBody, k.updateDate = :updateDate, k.version = k.version + 1 " +
+            "where k.key = :key and k.completed = false and k.createDate = :claimDate")
+    int complete(@Param("key") String key, @Param("claimDate") LocalDateTime claimDate, @Param("responseBody") String responseBody,
+                 @Param("updateDate") LocalDateTime updateDate);
+
+    // Gives the key back after a failed execution, so a retry runs it again
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.key = :key and k.completed = false and k.createDate = :claimDate")
+    int release(@Param("key") String key, @Param("claimDate") LocalDateTime claimDate);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.createDate < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
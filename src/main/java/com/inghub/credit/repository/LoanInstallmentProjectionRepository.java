@@ -0,0 +1,14 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+
+// Installment searches that read only the LoanInstallmentDTO columns instead of LoanInstallment entities
+public interface LoanInstallmentProjectionRepository {
+
+    Window<LoanInstallmentDTO> scrollLoanInstallmentDTOs(Specification<LoanInstallment> spec, Sort sort, int limit, ScrollPosition position);
+}
@@ -0,0 +1,34 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.repository.projection.SpecificationProjection;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class LoanInstallmentProjectionRepositoryImpl implements LoanInstallmentProjectionRepository {
+
+    private static final List<String> LOAN_INSTALLMENT_DTO_PATHS = List.of("id", "createDate", "updateDate", "amount", "paidAmount", "dueDate", "paymentDate", "paid");
+
+    private final SpecificationProjection<LoanInstallment, LoanInstallmentDTO> loanInstallmentDTOProjection;
+
+    LoanInstallmentProjectionRepositoryImpl(EntityManager entityManager) {
+        loanInstallmentDTOProjection = new SpecificationProjection<>(entityManager, LoanInstallment.class, LOAN_INSTALLMENT_DTO_PATHS,
+                row -> new LoanInstallmentDTO(row.get(0, Long.class), row.get(1, LocalDateTime.class), row.get(2, LocalDateTime.class),
+                                              row.get(3, BigDecimal.class), row.get(4, BigDecimal.class), row.get(5, LocalDate.class),
+                                              row.get(6, LocalDateTime.class), row.get(7, Boolean.class)));
+    }
+
+    @Override
+    public Window<LoanInstallmentDTO> scrollLoanInstallmentDTOs(Specification<LoanInstallment> spec, Sort sort, int limit, ScrollPosition position) {
+        return loanInstallmentDTOProjection.scroll(spec, sort, limit, position);
+    }
+}
@@ -1,18 +1,67 @@
 package com.inghub.credit.repository;
 
 import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.model.dto.LoanInstallmentExportRow;
+import com.inghub.credit.model.dto.LoanSummaryCheckRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
 
 @Repository
-public interface LoanInstallmentRepository extends JpaRepository<LoanInstallment, Long> {
+public interface LoanInstallmentRepository extends JpaRepository<LoanInstallment, Long>, JpaSpecificationExecutor<LoanInstallment>, LoanInstallmentProjectionRepository {
 
-    Page<LoanInstallment> findByLoanId(Long loanId, Pageable pageable);
+    // Only the response columns are read and no entity is loaded. li.loan.id reads the loan_id column, a derived query
+    // would left join loan and filter on loan.id, which keeps the loan_installment indexes from being used.
+    // The result rows are kept in the query cache when the second-level cache is enabled, see the l2cache profile
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "select new com.inghub.credit.model.dto.LoanInstallmentDTO(li.id, li.createDate, li.updateDate, li.amount, li.paidAmount, li.dueDate, li.paymentDate, li.paid) " +
+            "from LoanInstallment li where li.loan.id = :loanId",
+            countQuery = "select count(li) from LoanInstallment li where li.loan.id = :loanId")
+    Page<LoanInstallmentDTO> findDTOsByLoanId(@Param("loanId") Long loanId, Pageable pageable);
 
-    List<LoanInstallment> findByLoanIdAndPaidOrderByDueDate(Long loanId, boolean paid);
+    // Reads pageSize + 1 rows instead of running a count query
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("select new com.inghub.credit.model.dto.LoanInstallmentDTO(li.id, li.createDate, li.updateDate, li.amount, li.paidAmount, li.dueDate, li.paymentDate, li.paid) " +
+            "from LoanInstallment li where li.loan.id = :loanId")
+    Slice<LoanInstallmentDTO> findDTOSliceByLoanId(@Param("loanId") Long loanId, Pageable pageable);
 
-}
\ No newline at end of file
+    // Forward-only cursor over every installment of the customer, must be consumed in a transaction and closed.
+    // Rows are fetched from the driver in blocks of the fetch size instead of being read into a list
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.inghub.credit.model.dto.LoanInstallmentExportRow(l.id, l.createDate, l.updateDate, l.loanAmount, l.numberOfInstallment, l.paid, " +
+            "l.paidInstallmentCount, l.remainingAmount, l.nextDueDate, l.nextInstallmentAmount, " +
+            "li.id, li.createDate, li.updateDate, li.amount, li.paidAmount, li.dueDate, li.paymentDate, li.paid) " +
+            "from LoanInstallment li join li.loan l where l.customer.id = :customerId order by l.id, li.dueDate, li.id")
+    Stream<LoanInstallmentExportRow> streamExportRowsByCustomerId(@Param("customerId") Long customerId);
+
+    // Every row of every loan in loan and due date order, for LoanSummaryVerificationJob
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.inghub.credit.model.dto.LoanSummaryCheckRow(l.id, l.paid, l.paidInstallmentCount, l.remainingAmount, l.nextDueDate, l.nextInstallmentAmount, " +
+            "li.amount, li.dueDate, li.paid) " +
+            "from LoanInstallment li join li.loan l order by l.id, li.dueDate, li.id")
+    Stream<LoanSummaryCheckRow> streamLoanSummaryCheckRows();
+
+    // Pays the unpaid installments of the loan due until the given date. Bulk updates bypass the auditing listener and
+    // the version check, so udate and version are set explicitly
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update LoanInstallment li set li.paidAmount = li.amount, li.paymentDate = :paymentDate, li.paid = true, li.updateDate = :paymentDate, " +
+            "li.version = li.version + 1 where li.loan.id = :loanId and li.paid = false and li.dueDate <= :lastDueDate")
+    int markInstallmentsAsPaidDueUntil(@Param("loanId") Long loanId, @Param("lastDueDate") LocalDate lastDueDate, @Param("paymentDate") LocalDateTime paymentDate);
+
+}
@@ -0,0 +1,18 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.model.dto.LoanDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+
+// Loan searches that read only the LoanDTO columns instead of Loan entities
+public interface LoanProjectionRepository {
+
+    Page<LoanDTO> findLoanDTOs(Specification<Loan> spec, Pageable pageable);
+
+    Window<LoanDTO> scrollLoanDTOs(Specification<Loan> spec, Sort sort, int limit, ScrollPosition position);
+}
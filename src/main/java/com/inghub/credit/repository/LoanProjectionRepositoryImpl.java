@@ -0,0 +1,43 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.model.dto.LoanDTO;
+import com.inghub.credit.repository.projection.SpecificationProjection;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class LoanProjectionRepositoryImpl implements LoanProjectionRepository {
+
+    // customer.id is read from loan.customer_id, so customer is not joined
+    private static final List<String> LOAN_DTO_PATHS = List.of("id", "createDate", "updateDate", "customer.id", "loanAmount", "numberOfInstallment", "paid",
+                                                              "paidInstallmentCount", "remainingAmount", "nextDueDate", "nextInstallmentAmount");
+
+    private final SpecificationProjection<Loan, LoanDTO> loanDTOProjection;
+
+    LoanProjectionRepositoryImpl(EntityManager entityManager) {
+        loanDTOProjection = new SpecificationProjection<>(entityManager, Loan.class, LOAN_DTO_PATHS,
+                row -> new LoanDTO(row.get(0, Long.class), row.get(1, LocalDateTime.class), row.get(2, LocalDateTime.class), row.get(3, Long.class),
+                                   row.get(4, BigDecimal.class), row.get(5, Integer.class), row.get(6, Boolean.class), row.get(7, Integer.class),
+                                   row.get(8, BigDecimal.class), row.get(9, LocalDate.class), row.get(10, BigDecimal.class)));
+    }
+
+    @Override
+    public Page<LoanDTO> findLoanDTOs(Specification<Loan> spec, Pageable pageable) {
+        return loanDTOProjection.page(spec, pageable);
+    }
+
+    @Override
+    public Window<LoanDTO> scrollLoanDTOs(Specification<Loan> spec, Sort sort, int limit, ScrollPosition position) {
+        return loanDTOProjection.scroll(spec, sort, limit, position);
+    }
+}
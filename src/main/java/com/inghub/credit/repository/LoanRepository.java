@@ -3,8 +3,28 @@ package com.inghub.credit.repository;
 import com.inghub.credit.domain.Loan;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Repository
-public interface LoanRepository extends JpaRepository<Loan, Long>, JpaSpecificationExecutor<Loan> {
-}
\ No newline at end of file
+public interface LoanRepository extends JpaRepository<Loan, Long>, JpaSpecificationExecutor<Loan>, LoanProjectionRepository {
+
+    // Moves the summary past the paid installments. Matches no row when another payment of the loan committed after
+    // the summary was read, the row lock also makes a concurrent payment of the loan wait for this transaction
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update Loan l set l.paidInstallmentCount = l.paidInstallmentCount + :installmentCount, l.remainingAmount = l.remainingAmount - :paidAmount, " +
+            "l.nextDueDate = :nextDueDate, l.nextInstallmentAmount = :nextInstallmentAmount, l.paid = :paid, l.updateDate = :updateDate, l.version = l.version + 1 " +
+            "where l.id = :id and l.paidInstallmentCount = :paidInstallmentCount")
+    int recordPayment(@Param("id") Long id, @Param("paidInstallmentCount") int paidInstallmentCount, @Param("installmentCount") int installmentCount,
+                      @Param("paidAmount") BigDecimal paidAmount, @Param("nextDueDate") LocalDate nextDueDate,
+                      @Param("nextInstallmentAmount") BigDecimal nextInstallmentAmount, @Param("paid") boolean paid,
+                      @Param("updateDate") LocalDateTime updateDate);
+}
@@ -0,0 +1,44 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.domain.PaymentLedgerEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PaymentLedgerRepository extends JpaRepository<PaymentLedgerEntry, Long> {
+
+    // The latest payment of the loan, projected or not, read through the unique (loan_id, first_installment) index
+    Optional<PaymentLedgerEntry> findFirstByLoanIdOrderByFirstInstallmentDesc(Long loanId);
+
+    @Query("select e from PaymentLedgerEntry e where e.projectionDate is null and e.projectionError is null order by e.id")
+    List<PaymentLedgerEntry> findUnprojected(Pageable pageable);
+
+    @Query("select count(e) > 0 from PaymentLedgerEntry e where e.projectionDate is null and e.loanId = :loanId")
+    boolean existsUnprojectedByLoanId(@Param("loanId") Long loanId);
+
+    @Query("select count(e) > 0 from PaymentLedgerEntry e where e.projectionDate is null and e.customerId = :customerId")
+    boolean existsUnprojectedByCustomerId(@Param("customerId") Long customerId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update PaymentLedgerEntry e set e.projectionDate = :projectionDate, e.updateDate = :projectionDate, e.version = e.version + 1 " +
+            "where e.id in :ids and e.projectionDate is null")
+    int markProjected(@Param("ids") Collection<Long> ids, @Param("projectionDate") LocalDateTime projectionDate);
+
+    // Every unprojected entry of the loan, so its later payments are not applied on top of the failed ones
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update PaymentLedgerEntry e set e.projectionError = :projectionError, e.updateDate = :updateDate, e.version = e.version + 1 " +
+            "where e.loanId = :loanId and e.projectionDate is null")
+    int markFailed(@Param("loanId") Long loanId, @Param("projectionError") String projectionError, @Param("updateDate") LocalDateTime updateDate);
+}
@@ -0,0 +1,103 @@
+package com.inghub.credit.repository.page;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opaque cursor for keyset pagination. It carries the sort keys (including the id tie-breaker) of the last row of a page,
+ * so the next page is read with a seek predicate instead of an OFFSET.
+ */
+public final class PageCursor {
+
+    private static final String KEY_SEPARATOR = "\n";
+    private static final String VALUE_SEPARATOR = "=";
+
+    private PageCursor() {
+    }
+
+    public static String encode(ScrollPosition position, Sort sort) {
+        Map<String, Object> keys = ((KeysetScrollPosition) position).getKeys();
+        List<String> encodedKeys = new ArrayList<>();
+        for (Order order : sort) {
+            Object value = keys.get(order.getProperty());
+            if (value == null) {
+                throw new IllegalArgumentException("Cursor pagination is not supported for nullable sort property: " + order.getProperty());
+            }
+            encodedKeys.add(getSign(order.getDirection()) + order.getProperty() + VALUE_SEPARATOR + formatValue(value));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.join(KEY_SEPARATOR, encodedKeys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // An empty cursor starts from the first page
+    public static KeysetScrollPosition decode(String cursor, Sort sort, Class<?> domainType) {
+        if (StringUtils.isEmpty(cursor)) {
+            return ScrollPosition.keyset();
+        }
+
+        String[] encodedKeys = StringUtils.split(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), KEY_SEPARATOR);
+        List<Order> orders = sort.toList();
+        if (encodedKeys.length != orders.size()) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort: " + sort);
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (int i = 0; i < encodedKeys.length; i++) {
+            Order order = orders.get(i);
+            String expectedPrefix = getSign(order.getDirection()) + order.getProperty() + VALUE_SEPARATOR;
+            if (!encodedKeys[i].startsWith(expectedPrefix)) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort: " + sort);
+            }
+            keys.put(order.getProperty(), parseValue(domainType, order.getProperty(), encodedKeys[i].substring(expectedPrefix.length())));
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    private static String getSign(Direction direction) {
+        return direction.isDescending() ? "-" : "+";
+    }
+
+    private static String formatValue(Object value) {
+        return value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+    }
+
+    private static Object parseValue(Class<?> domainType, String property, String value) {
+        Field field = ReflectionUtils.findField(domainType, property);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown sort property: " + property);
+        }
+
+        Class<?> type = field.getType();
+        if (type == BigDecimal.class) {
+            return new BigDecimal(value);
+        } else if (type == Long.class || type == long.class) {
+            return Long.valueOf(value);
+        } else if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(value);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return Boolean.valueOf(value);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(value);
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(value);
+        } else if (type == String.class) {
+            return value;
+        }
+        throw new IllegalArgumentException("Cursor pagination is not supported for sort property: " + property);
+    }
+}
@@ -2,7 +2,9 @@ package com.inghub.credit.repository.page;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.OffsetScrollPosition;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.domain.Sort.Order;
@@ -15,10 +17,26 @@ import java.util.stream.Collectors;
 
 public final class PageRequestBuilder {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final String ID_PROPERTY = "id";
+
     private PageRequestBuilder() {
     }
 
     public static PageRequest getPageRequest(Integer pageSize, Integer pageNumber, String sortingCriteria) {
+        return PageRequest.of(ObjectUtils.defaultIfNull(pageNumber, 1) - 1, getPageSize(pageSize), getSort(sortingCriteria));
+    }
+
+    // OffsetScrollPosition points at the last row already read, the initial position starts from the first row
+    public static OffsetScrollPosition getScrollPosition(PageRequest pageRequest) {
+        return pageRequest.getOffset() == 0 ? ScrollPosition.offset() : ScrollPosition.offset(pageRequest.getOffset() - 1);
+    }
+
+    public static int getPageSize(Integer pageSize) {
+        return ObjectUtils.defaultIfNull(pageSize, DEFAULT_PAGE_SIZE);
+    }
+
+    public static Sort getSort(String sortingCriteria) {
 
         Set<String> sortingFields = new LinkedHashSet<>(
                 Arrays.asList(StringUtils.split(StringUtils.defaultIfEmpty(sortingCriteria, ""), ",")));
@@ -26,13 +44,18 @@ public final class PageRequestBuilder {
         List<Order> sortingOrders = sortingFields.stream().map(PageRequestBuilder::getOrder)
                 .collect(Collectors.toList());
 
-        Sort sort = sortingOrders.isEmpty() ? null : Sort.by(sortingOrders);
+        return sortingOrders.isEmpty() ? Sort.unsorted() : Sort.by(sortingOrders);
+    }
 
-        if (sort == null) {
-            return PageRequest.of(ObjectUtils.defaultIfNull(pageNumber, 1) - 1, ObjectUtils.defaultIfNull(pageSize, 20));
-        } else {
-            return PageRequest.of(ObjectUtils.defaultIfNull(pageNumber, 1) - 1, ObjectUtils.defaultIfNull(pageSize, 20), sort);
+    // Keyset pagination needs a unique ordering, so id is appended as the last sort key when missing
+    public static Sort getKeysetSort(String sortingCriteria) {
+        Sort sort = getSort(sortingCriteria);
+        if (sort.getOrderFor(ID_PROPERTY) != null) {
+            return sort;
         }
+
+        Direction direction = sort.stream().reduce((first, second) -> second).map(Order::getDirection).orElse(Direction.ASC);
+        return sort.and(Sort.by(direction, ID_PROPERTY));
     }
 
     private static Order getOrder(String value) {
@@ -0,0 +1,152 @@
+package com.inghub.credit.repository.projection;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.*;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs a {@link Specification} as a query that selects only the given attribute paths and maps every row with the
+ * given function, so no entity is loaded into the persistence context and nothing is dirty checked.
+ * <p>
+ * Paths of to-one associations such as {@code customer.id} are read from the foreign key column without a join. Sort
+ * properties that are not selected are added to the select list, so keyset positions can be taken from the rows.
+ */
+public class SpecificationProjection<T, R> {
+
+    private final EntityManager entityManager;
+    private final Class<T> domainType;
+    private final List<String> paths;
+    private final Function<Tuple, R> mapper;
+
+    public SpecificationProjection(EntityManager entityManager, Class<T> domainType, List<String> paths, Function<Tuple, R> mapper) {
+        this.entityManager = entityManager;
+        this.domainType = domainType;
+        this.paths = List.copyOf(paths);
+        this.mapper = mapper;
+    }
+
+    public Page<R> page(Specification<T> spec, Pageable pageable) {
+        TypedQuery<Tuple> query = createQuery(spec, pageable.getSort(), null);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        List<R> content = query.getResultList().stream().map(mapper).toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(spec));
+    }
+
+    // reads limit + 1 rows to find out whether there is a next window
+    public Window<R> scroll(Specification<T> spec, Sort sort, int limit, ScrollPosition position) {
+        List<Tuple> rows;
+        long firstOffset = 0;
+        if (position instanceof OffsetScrollPosition offsetPosition) {
+            firstOffset = offsetPosition.isInitial() ? 0 : offsetPosition.getOffset() + 1;
+            rows = createQuery(spec, sort, null).setFirstResult((int) firstOffset).setMaxResults(limit + 1).getResultList();
+        } else if (position instanceof KeysetScrollPosition keysetPosition && keysetPosition.scrollsForward()) {
+            rows = createQuery(spec, sort, keysetPosition).setMaxResults(limit + 1).getResultList();
+        } else {
+            throw new IllegalArgumentException("Unsupported scroll position: " + position);
+        }
+
+        boolean hasNext = rows.size() > limit;
+        List<Tuple> windowRows = hasNext ? rows.subList(0, limit) : rows;
+        List<R> content = windowRows.stream().map(mapper).toList();
+
+        if (position instanceof OffsetScrollPosition) {
+            long offset = firstOffset;
+            return Window.from(content, index -> ScrollPosition.offset(offset + index), hasNext);
+        }
+        List<String> selectedPaths = getSelectedPaths(sort);
+        return Window.from(content, index -> ScrollPosition.forward(getKeys(windowRows.get(index), selectedPaths, sort)), hasNext);
+    }
+
+    private TypedQuery<Tuple> createQuery(Specification<T> spec, Sort sort, KeysetScrollPosition keysetPosition) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<T> root = query.from(domainType);
+
+        query.multiselect(getSelectedPaths(sort).stream().<Selection<?>>map(path -> getPath(root, path)).toList());
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate specPredicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (specPredicate != null) {
+            predicates.add(specPredicate);
+        }
+        if (keysetPosition != null && !keysetPosition.isInitial()) {
+            predicates.add(getKeysetPredicate(root, criteriaBuilder, sort, keysetPosition.getKeys()));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+        return entityManager.createQuery(query);
+    }
+
+    private long count(Specification<T> spec) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<T> root = query.from(domainType);
+        query.select(criteriaBuilder.count(root));
+
+        Predicate specPredicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (specPredicate != null) {
+            query.where(specPredicate);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    // (k1 > v1) or (k1 = v1 and k2 > v2) or ..., with < for descending keys
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate getKeysetPredicate(Root<T> root, CriteriaBuilder criteriaBuilder, Sort sort, Map<String, Object> keys) {
+        List<Predicate> alternatives = new ArrayList<>();
+        List<Predicate> equalPrefix = new ArrayList<>();
+        for (Order order : sort) {
+            Expression<Comparable> path = (Expression<Comparable>) getPath(root, order.getProperty());
+            Comparable key = (Comparable) keys.get(order.getProperty());
+            if (key == null) {
+                throw new IllegalArgumentException("Scroll position does not contain sort property: " + order.getProperty());
+            }
+
+            List<Predicate> alternative = new ArrayList<>(equalPrefix);
+            alternative.add(order.isAscending() ? criteriaBuilder.greaterThan(path, key) : criteriaBuilder.lessThan(path, key));
+            alternatives.add(criteriaBuilder.and(alternative.toArray(new Predicate[0])));
+            equalPrefix.add(criteriaBuilder.equal(path, key));
+        }
+        return criteriaBuilder.or(alternatives.toArray(new Predicate[0]));
+    }
+
+    private List<String> getSelectedPaths(Sort sort) {
+        List<String> selectedPaths = new ArrayList<>(paths);
+        for (Order order : sort) {
+            if (!selectedPaths.contains(order.getProperty())) {
+                selectedPaths.add(order.getProperty());
+            }
+        }
+        return selectedPaths;
+    }
+
+    private static Map<String, Object> getKeys(Tuple row, List<String> selectedPaths, Sort sort) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (Order order : sort) {
+            keys.put(order.getProperty(), row.get(selectedPaths.indexOf(order.getProperty())));
+        }
+        return keys;
+    }
+
+    private static Path<?> getPath(Root<?> root, String attributePath) {
+        Path<?> path = root;
+        for (String attribute : attributePath.split("\\.")) {
+            path = path.get(attribute);
+        }
+        return path;
+    }
+}
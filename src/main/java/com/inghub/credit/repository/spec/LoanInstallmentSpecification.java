@@ -0,0 +1,12 @@
+package com.inghub.credit.repository.spec;
+
+import com.inghub.credit.domain.LoanInstallment;
+import org.springframework.data.jpa.domain.Specification;
+
+public class LoanInstallmentSpecification {
+
+    // loan.id is read from loan_installment.loan_id without joining loan, so the loan_id indexes can be used
+    public static Specification<LoanInstallment> getSpecificationForLoanId(Long loanId) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("loan").get("id"), loanId);
+    }
+}
@@ -1,7 +1,6 @@
 package com.inghub.credit.repository.spec;
 
 import com.inghub.credit.domain.Loan;
-import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.jpa.domain.Specification;
 
@@ -16,11 +15,9 @@ public class LoanSpecification {
         return (root, query, criteriaBuilder) -> {
             List<Predicate> predicateList = new ArrayList<>();
 
-            // Join Loan with Customer
-            Join<Object, Object> customerJoin = root.join("customer");
-
+            // customer.id is read from loan.customer_id, a join to customer would keep the loan index from being used
             if (customerId != null) {
-                predicateList.add(criteriaBuilder.equal(customerJoin.get("id"), customerId));
+                predicateList.add(criteriaBuilder.equal(root.get("customer").get("id"), customerId));
             }
 
             if (loanAmount != null && loanAmount.compareTo(BigDecimal.ZERO) > 0) {
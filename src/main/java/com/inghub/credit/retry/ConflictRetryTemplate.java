@@ -0,0 +1,88 @@
+package com.inghub.credit.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a transaction again when it fails on a concurrent update: a version conflict, a conditional update that matched
+ * no row, a lock timeout or a deadlock, all reported as {@link ConcurrencyFailureException}. Attempts are bounded by
+ * {@code credit.retry.max-attempts} and separated by an exponential backoff with jitter between
+ * {@code credit.retry.initial-backoff} and {@code credit.retry.max-backoff}, so competing retries spread out instead of
+ * colliding again. Inside a surrounding transaction the action runs once, the conflict has rolled that transaction
+ * back and only its owner can run it again.
+ */
+@Component
+@Slf4j
+public class ConflictRetryTemplate {
+
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public ConflictRetryTemplate(MeterRegistry meterRegistry,
+                                 @Value("${credit.retry.max-attempts}") int maxAttempts,
+                                 @Value("${credit.retry.initial-backoff}") Duration initialBackoff,
+                                 @Value("${credit.retry.max-backoff}") Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Retry max attempts must be positive: " + maxAttempts);
+        }
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+    }
+
+    public <T> T execute(String operation, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = action.get();
+                if (attempt > 1) {
+                    countConflict(operation, "recovered");
+                }
+                return result;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.error("{} failed on a concurrent update after {} attempts: {}", operation, attempt, e.getMessage());
+                    countConflict(operation, "exhausted");
+                    throw e;
+                }
+                long backoffMillis = backoffMillis(attempt);
+                log.debug("{} failed on a concurrent update, retrying in {} ms. Attempt {} of {}: {}", operation, backoffMillis, attempt, maxAttempts, e.getMessage());
+                countConflict(operation, "retried");
+                sleep(backoffMillis);
+            }
+        }
+    }
+
+    //doubles per attempt up to the maximum, the wait is drawn from the upper half of it
+    private long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private void countConflict(String operation, String result) {
+        meterRegistry.counter("credit.retry.conflicts", "operation", operation, "result", result).increment();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrencyFailureException("Interrupted while waiting to retry a concurrent update", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.inghub.credit.retry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated {@code @Transactional} method again when it fails on a concurrent update, see
+ * {@link ConflictRetryTemplate}. The retry wraps the transaction, so every attempt reads the rows again.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+}
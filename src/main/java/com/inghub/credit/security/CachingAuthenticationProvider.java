@@ -0,0 +1,95 @@
+package com.inghub.credit.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsChecker;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Remembers credentials the delegate has already verified, so repeated HTTP Basic requests skip the password hash check.
+ * <p>
+ * Entries are keyed by a salted SHA-256 of the username and password and hold the encoded password they were verified
+ * against. On a hit the user is still loaded from the {@link UserDetailsService}, so a changed password, a disabled or
+ * locked account or changed authorities take effect on the next request.
+ */
+@Slf4j
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+    private final UserDetailsService userDetailsService;
+    private final UserDetailsChecker userDetailsChecker = new AccountStatusUserDetailsChecker();
+    private final Cache<String, String> verifiedCredentials;
+    // random per instance, so a cache key is useless outside this process
+    private final byte[] salt = new byte[32];
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, UserDetailsService userDetailsService, Duration ttl, long maximumSize) {
+        this.delegate = delegate;
+        this.userDetailsService = userDetailsService;
+        this.verifiedCredentials = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+        new SecureRandom().nextBytes(salt);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (authentication.getCredentials() == null) {
+            return delegate.authenticate(authentication);
+        }
+
+        String username = authentication.getName();
+        String credentialKey = getCredentialKey(username, authentication.getCredentials().toString());
+
+        String verifiedPassword = verifiedCredentials.getIfPresent(credentialKey);
+        if (verifiedPassword != null) {
+            UserDetails user = userDetailsService.loadUserByUsername(username);
+            if (verifiedPassword.equals(user.getPassword())) {
+                userDetailsChecker.check(user);
+                log.debug("Authenticated user: {} from verified credential cache", username);
+                return UsernamePasswordAuthenticationToken.authenticated(user, authentication.getCredentials(), user.getAuthorities());
+            }
+            log.debug("Password of user: {} changed since it was verified, evicting cached credential", username);
+            verifiedCredentials.invalidate(credentialKey);
+        }
+
+        Authentication result = delegate.authenticate(authentication);
+        // the encoded password is read before ProviderManager erases the credentials of the result
+        if (result != null && result.getPrincipal() instanceof UserDetails user && user.getPassword() != null) {
+            verifiedCredentials.put(credentialKey, user.getPassword());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    private String getCredentialKey(String username, String password) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(salt);
+            messageDigest.update(username.getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) 0);
+            messageDigest.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
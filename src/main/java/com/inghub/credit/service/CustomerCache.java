@@ -0,0 +1,89 @@
+package com.inghub.credit.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.inghub.credit.model.dto.CustomerDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of customer snapshots for reads that do not decide on the credit limit, such as existence
+ * checks. Limit checks and reservations always run against the database, every limit change evicts the customer.
+ */
+@Component
+@Slf4j
+public class CustomerCache {
+
+    private final Cache<Long, CustomerDTO> cache;
+    //one count for all customers, a limit change of any customer skips caching the loads running at that moment
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public CustomerCache(MeterRegistry meterRegistry,
+                         @Value("${credit.customer.cache.ttl}") Duration ttl,
+                         @Value("${credit.customer.cache.maximum-size}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        //hit, miss, eviction and size meters tagged cache=customer
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "customer");
+    }
+
+    // loads the customer on a miss, customers that do not exist are not cached. The loader runs outside the cache,
+    // Cache.get would run the database read inside a ConcurrentHashMap bin lock and pin a virtual thread to its carrier.
+    // Concurrent misses of one customer may load it twice, which is cheaper than making them wait. A snapshot is only
+    // put when no customer was evicted while it was loaded, it may have been read before the change that evicted
+    Optional<CustomerDTO> get(Long customerId, Function<Long, CustomerDTO> loader) {
+        CustomerDTO customer = cache.getIfPresent(customerId);
+        if (customer == null) {
+            long evictionCountBeforeLoad = evictionCount.get();
+            CustomerDTO loadedCustomer = loader.apply(customerId);
+            if (loadedCustomer != null) {
+                cache.asMap().compute(customerId, (id, cachedCustomer) ->
+                        evictionCount.get() == evictionCountBeforeLoad ? loadedCustomer : cachedCustomer);
+            }
+            customer = loadedCustomer;
+        }
+        return Optional.ofNullable(customer);
+    }
+
+    // evicts now and again when the surrounding transaction completes, otherwise a read between the update and the
+    // commit could put the old row back into the cache until it expires. The count is raised before the entry is
+    // removed, so a load that already passed its check has its snapshot removed here
+    void evict(Long customerId) {
+        invalidate(customerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(customerId);
+                }
+            });
+        }
+    }
+
+    private void invalidate(Long customerId) {
+        evictionCount.incrementAndGet();
+        cache.invalidate(customerId);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+}
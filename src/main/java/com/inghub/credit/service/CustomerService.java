@@ -2,13 +2,14 @@ package com.inghub.credit.service;
 
 import com.inghub.credit.domain.Customer;
 import com.inghub.credit.exception.ResourceNotFoundException;
+import com.inghub.credit.model.dto.CustomerDTO;
 import com.inghub.credit.repository.CustomerRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Service
@@ -17,47 +18,70 @@ import java.util.Optional;
 public class CustomerService {
 
     private final CustomerRepository customerRepository;
+    private final CustomerCache customerCache;
 
     public Customer findById(Long id) {
-        log.info("Attempting to find Customer with ID: {}", id);
+        log.debug("Attempting to find Customer with ID: {}", id);
         Optional<Customer> customer = customerRepository.findById(id);
         if (customer.isEmpty()) {
             log.error("Customer not found with given id: {}", id);
             throw new ResourceNotFoundException("Customer not found with given id: " + id);
         } else {
-            log.info("Found Customer with ID: {}", id);
+            log.debug("Found Customer with ID: {}", id);
             return customer.get();
         }
     }
 
-    public void checkCustomerHasEnoughLimitToGetNewLoan(Long customerId, BigDecimal newLoanAmount) {
-        log.info("Checking if Customer with ID: {} has enough credit limit for new loan of amount: {}", customerId, newLoanAmount);
-        Customer customer = findById(customerId);
-        BigDecimal customerAvailableLimit = customer.getCreditLimit().subtract(customer.getUsedCreditLimit());
-        if (customerAvailableLimit.compareTo(BigDecimal.ZERO) <= 0 || customerAvailableLimit.compareTo(newLoanAmount) < 0) {
-            log.error("Customer with ID: {} has insufficient credit limit. Available: {}, Required: {}", customerId, customerAvailableLimit, newLoanAmount);
-            throw new IllegalArgumentException("Insufficient credit limit.");
-        }
-        log.info("Customer with ID: {} has enough credit limit for the new loan.", customerId);
+    // Read-through cached snapshot, the credit limits in it can be stale until the limit change commits
+    public CustomerDTO findCachedById(Long id) {
+        log.debug("Attempting to find cached Customer with ID: {}", id);
+        return customerCache.get(id, this::loadCustomer).orElseThrow(() -> {
+            log.error("Customer not found with given id: {}", id);
+            return new ResourceNotFoundException("Customer not found with given id: " + id);
+        });
+    }
+
+    public void checkCustomerExists(Long id) {
+        findCachedById(id);
+    }
+
+    private CustomerDTO loadCustomer(Long id) {
+        log.debug("Loading Customer with ID: {} into the cache", id);
+        return customerRepository.findById(id)
+                .map(customer -> new CustomerDTO(customer.getId(), customer.getName(), customer.getSurname(),
+                                                 customer.getCreditLimit(), customer.getUsedCreditLimit()))
+                .orElse(null);
+    }
+
+    // Returns a reference without hitting the database, use it only for customers known to exist
+    public Customer getReferenceById(Long id) {
+        return customerRepository.getReferenceById(id);
     }
 
     public void decreaseCustomerUsedCreditLimit(Long customerId, BigDecimal closedLoanAmount) {
-        log.info("Decreasing the used credit limit for Customer with ID: {} by amount: {}", customerId, closedLoanAmount);
-        Customer customer = findById(customerId);
-        BigDecimal customerCurrentUsedLimit = customer.getUsedCreditLimit();
-        BigDecimal customerNewUsedLimit = customerCurrentUsedLimit.subtract(closedLoanAmount);
-        customer.setUsedCreditLimit(customerNewUsedLimit);
-        customerRepository.save(customer);
-        log.info("Customer with ID: {} has new used credit limit: {}", customerId, customerNewUsedLimit);
+        log.debug("Decreasing the used credit limit for Customer with ID: {} by amount: {}", customerId, closedLoanAmount);
+        int updatedCount = customerRepository.decreaseUsedCreditLimit(customerId, closedLoanAmount, LocalDateTime.now());
+        customerCache.evict(customerId);
+        if (updatedCount == 0) {
+            log.error("Customer not found with given id: {}", customerId);
+            throw new ResourceNotFoundException("Customer not found with given id: " + customerId);
+        }
+        log.debug("Used credit limit of Customer with ID: {} decreased by: {}", customerId, closedLoanAmount);
     }
 
+    // Checks the available limit and reserves the amount atomically, so concurrent loans can not over-allocate the limit
     public void increaseCustomerUsedCreditLimit(Long customerId, BigDecimal usedLoanAmount) {
-        log.info("Increasing the used credit limit for Customer with ID: {} by amount: {}", customerId, usedLoanAmount);
-        Customer customer = findById(customerId);
-        BigDecimal customerCurrentUsedLimit = customer.getUsedCreditLimit();
-        BigDecimal customerNewUsedLimit = customerCurrentUsedLimit.add(usedLoanAmount);
-        customer.setUsedCreditLimit(customerNewUsedLimit);
-        customerRepository.save(customer);
-        log.info("Customer with ID: {} has new used credit limit: {}", customerId, customerNewUsedLimit);
+        log.debug("Increasing the used credit limit for Customer with ID: {} by amount: {}", customerId, usedLoanAmount);
+        int updatedCount = customerRepository.increaseUsedCreditLimitIfAvailable(customerId, usedLoanAmount, LocalDateTime.now());
+        customerCache.evict(customerId);
+        if (updatedCount == 0) {
+            if (!customerRepository.existsById(customerId)) {
+                log.error("Customer not found with given id: {}", customerId);
+                throw new ResourceNotFoundException("Customer not found with given id: " + customerId);
+            }
+            log.error("Customer with ID: {} has insufficient credit limit. Required: {}", customerId, usedLoanAmount);
+            throw new IllegalArgumentException("Insufficient credit limit.");
+        }
+        log.debug("Used credit limit of Customer with ID: {} increased by: {}", customerId, usedLoanAmount);
     }
-}
\ No newline at end of file
+}
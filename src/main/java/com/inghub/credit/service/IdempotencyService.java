@@ -0,0 +1,245 @@
+package com.inghub.credit.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inghub.credit.domain.IdempotencyKey;
+import com.inghub.credit.exception.CreditException;
+import com.inghub.credit.repository.IdempotencyKeyRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs a write request at most once per {@code Idempotency-Key} header and replays its stored response to retries.
+ * Keys are stored per authenticated caller, a key sent by another caller never replays a response that is not its own.
+ * <p>
+ * The key is claimed with an insert committed before the execution, so a concurrent duplicate sees the claim and polls
+ * until the response is stored. The response is stored in the transaction of the execution, a crash in between leaves
+ * neither the business change nor the response behind. A failed execution gives the key back, errors are not replayed.
+ * Completed responses are served from a bounded in-process cache in front of the table, the table keeps them across
+ * restarts until {@link com.inghub.credit.job.IdempotencyKeyPurgeJob} deletes them.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 100;
+    public static final String ANONYMOUS_CALLER = "anonymous";
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate claimTransactionTemplate;
+    private final ConflictRetryTemplate conflictRetryTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, StoredResponse> cache;
+    private final Duration inProgressTimeout;
+    private final Duration waitTimeout;
+    private final Duration pollInterval;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              PlatformTransactionManager transactionManager,
+                              ConflictRetryTemplate conflictRetryTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${credit.idempotency.cache.ttl}") Duration cacheTtl,
+                              @Value("${credit.idempotency.cache.maximum-size}") long cacheMaximumSize,
+                              @Value("${credit.idempotency.in-progress-timeout}") Duration inProgressTimeout,
+                              @Value("${credit.idempotency.wait-timeout}") Duration waitTimeout,
+                              @Value("${credit.idempotency.poll-interval}") Duration pollInterval) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.claimTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.claimTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.conflictRetryTemplate = conflictRetryTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(cacheTtl)
+                .maximumSize(cacheMaximumSize)
+                .build();
+        this.inProgressTimeout = inProgressTimeout;
+        this.waitTimeout = waitTimeout;
+        this.pollInterval = pollInterval;
+    }
+
+    // runs the action once for the key, a null key runs it without idempotency. Must not be called inside a
+    // transaction, the claim has to be visible to concurrent duplicates before the action runs
+    public <T> T execute(String operation, String key, Object request, Class<T> responseType, Supplier<T> action) {
+        if (key == null) {
+            return action.get();
+        }
+        checkKeyIsValid(key);
+        String storedKey = storedKey(key);
+        String requestHash = hashRequest(operation, request);
+
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (true) {
+            Optional<StoredResponse> storedResponse = findStoredResponse(key, storedKey, requestHash);
+            if (storedResponse.isPresent()) {
+                log.debug("Replaying the stored {} response for idempotency key: {}", operation, key);
+                countRequest(operation, "replayed");
+                return readResponse(storedResponse.get().body(), responseType);
+            }
+
+            LocalDateTime claimDate = claim(storedKey, operation, requestHash);
+            if (claimDate != null) {
+                countRequest(operation, "executed");
+                return executeClaimed(key, storedKey, requestHash, claimDate, action);
+            }
+
+            if (System.nanoTime() - deadline > 0) {
+                log.error("Request with idempotency key: {} is still in progress after {}", key, waitTimeout);
+                countRequest(operation, "timed_out");
+                throw new CreditException("Request with idempotency key " + key + " is still in progress, please retry");
+            }
+            log.debug("Waiting for the request with idempotency key: {} to complete", key);
+            sleep(pollInterval);
+        }
+    }
+
+    private Optional<StoredResponse> findStoredResponse(String key, String storedKey, String requestHash) {
+        StoredResponse storedResponse = cache.getIfPresent(storedKey);
+        if (storedResponse == null) {
+            Optional<IdempotencyKey> idempotencyKey = idempotencyKeyRepository.findById(storedKey);
+            if (idempotencyKey.isEmpty()) {
+                return Optional.empty();
+            }
+            checkRequestMatches(key, idempotencyKey.get().getRequestHash(), requestHash);
+            if (!idempotencyKey.get().isCompleted()) {
+                return Optional.empty();
+            }
+            storedResponse = new StoredResponse(idempotencyKey.get().getRequestHash(), idempotencyKey.get().getResponseBody());
+            cache.put(storedKey, storedResponse);
+        }
+        checkRequestMatches(key, storedResponse.requestHash(), requestHash);
+        return Optional.of(storedResponse);
+    }
+
+    // returns the claim date that identifies this execution, or null when another execution holds the key
+    private LocalDateTime claim(String storedKey, String operation, String requestHash) {
+        LocalDateTime claimDate = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        try {
+            Integer claimed = claimTransactionTemplate.execute(status -> {
+                int count = idempotencyKeyRepository.claim(storedKey, operation, requestHash, claimDate);
+                if (count == 0) {
+                    count = idempotencyKeyRepository.claimStale(storedKey, requestHash, claimDate, claimDate.minus(inProgressTimeout));
+                }
+                return count;
+            });
+            return claimed != null && claimed > 0 ? claimDate : null;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Idempotency key: {} was claimed by a concurrent request", storedKey);
+            return null;
+        }
+    }
+
+    private <T> T executeClaimed(String key, String storedKey, String requestHash, LocalDateTime claimDate, Supplier<T> action) {
+        CompletedExecution<T> execution;
+        try {
+            //the action and the response share one transaction, so a concurrent update retries both
+            execution = conflictRetryTemplate.execute("IdempotencyService.execute", () -> transactionTemplate.execute(status -> {
+                T response = action.get();
+                String responseBody = writeResponse(response);
+                if (idempotencyKeyRepository.complete(storedKey, claimDate, responseBody, LocalDateTime.now()) == 0) {
+                    log.error("Claim of idempotency key: {} was taken over before the request completed", storedKey);
+                    throw new CreditException("Request with idempotency key " + key + " was taken over by a retry");
+                }
+                return new CompletedExecution<>(response, responseBody);
+            }));
+        } catch (RuntimeException e) {
+            claimTransactionTemplate.executeWithoutResult(status -> idempotencyKeyRepository.release(storedKey, claimDate));
+            throw e;
+        }
+        cache.put(storedKey, new StoredResponse(requestHash, execution.responseBody()));
+        return execution.response();
+    }
+
+    //the key prefixed with the authenticated caller, requests without an authentication share the anonymous caller
+    public static String storedKey(String key) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String caller = authentication == null ? ANONYMOUS_CALLER : authentication.getName();
+        return caller + ":" + key;
+    }
+
+    //the operation is part of the hash, so a key reused on another endpoint is rejected like a changed request
+    private String hashRequest(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Request could not be hashed for operation: " + operation, e);
+        }
+    }
+
+    private String writeResponse(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response could not be stored: " + response, e);
+        }
+    }
+
+    private <T> T readResponse(String responseBody, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(responseBody, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response could not be read as " + responseType.getSimpleName(), e);
+        }
+    }
+
+    private void countRequest(String operation, String result) {
+        meterRegistry.counter("credit.idempotency.requests", "operation", operation, "result", result).increment();
+    }
+
+    private static void checkKeyIsValid(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            log.error("Invalid idempotency key: {}", key);
+            throw new IllegalArgumentException("Idempotency key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+    }
+
+    private static void checkRequestMatches(String key, String storedRequestHash, String requestHash) {
+        if (!storedRequestHash.equals(requestHash)) {
+            log.error("Idempotency key: {} was used with a different request", key);
+            throw new CreditException("Idempotency key " + key + " was already used with a different request");
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CreditException("Interrupted while waiting for a request with the same idempotency key");
+        }
+    }
+
+    private record StoredResponse(String requestHash, String body) {
+    }
+
+    private record CompletedExecution<T>(T response, String responseBody) {
+    }
+}
@@ -0,0 +1,138 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.exception.ResourceNotFoundException;
+import com.inghub.credit.model.CreateLoanBatchItemResult;
+import com.inghub.credit.model.CreateLoanBatchResponse;
+import com.inghub.credit.model.CreateLoanRequest;
+import com.inghub.credit.model.CreateLoanResponse;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class LoanBatchService {
+
+    private final LoanService loanService;
+    private final CustomerService customerService;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    @Value("${credit.loan.batch.chunk-size}")
+    private int chunkSize;
+
+    @Value("${credit.loan.batch.max-size}")
+    private int maxSize;
+
+    public CreateLoanBatchResponse createLoans(List<CreateLoanRequest> requests) {
+        log.info("Creating {} loans in chunks of {}", requests.size(), chunkSize);
+        checkBatchSizeIsValid(requests.size());
+
+        CreateLoanBatchItemResult[] results = new CreateLoanBatchItemResult[requests.size()];
+
+        //items failing the request and static loan rules are reported up front, so they do not roll back a whole chunk
+        List<Integer> validIndexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String errorMessage = validateRequest(requests.get(i));
+            if (errorMessage == null) {
+                validIndexes.add(i);
+            } else {
+                results[i] = CreateLoanBatchItemResult.failure(i, errorMessage);
+            }
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += chunkSize) {
+            createLoanChunk(requests, validIndexes.subList(from, Math.min(from + chunkSize, validIndexes.size())), results);
+        }
+
+        int successCount = (int) Arrays.stream(results).filter(CreateLoanBatchItemResult::success).count();
+        log.info("Loan batch completed, {} created and {} failed", successCount, results.length - successCount);
+        return new CreateLoanBatchResponse(successCount, results.length - successCount, Arrays.asList(results));
+    }
+
+    //one transaction for the chunk, so the inserts of all its loans and installments are flushed in JDBC batches.
+    //when any item fails the chunk is rolled back and its items are created one by one to find the failing ones,
+    //each through createLoan which opens its own transaction and retries a concurrent update
+    private void createLoanChunk(List<CreateLoanRequest> requests, List<Integer> chunkIndexes, CreateLoanBatchItemResult[] results) {
+        try {
+            List<CreateLoanResponse> responses = transactionTemplate.execute(status -> persistLoanChunk(chunkIndexes.stream().map(requests::get).toList()));
+            for (int i = 0; i < chunkIndexes.size(); i++) {
+                results[chunkIndexes.get(i)] = CreateLoanBatchItemResult.success(chunkIndexes.get(i), responses.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Loan batch chunk of {} items rolled back, creating them one by one. Reason: {}", chunkIndexes.size(), e.getMessage());
+            for (int index : chunkIndexes) {
+                try {
+                    CreateLoanResponse response = createLoan(requests.get(index));
+                    results[index] = CreateLoanBatchItemResult.success(index, response);
+                } catch (RuntimeException itemException) {
+                    log.error("Loan batch item {} failed: {}", index, itemException.getMessage());
+                    results[index] = CreateLoanBatchItemResult.failure(index, itemException.getMessage());
+                }
+            }
+        }
+    }
+
+    //the credit limit of every customer in the chunk is reserved in one statement before any loan is persisted,
+    //so the reservations do not flush or dirty check the loans of the chunk
+    private List<CreateLoanResponse> persistLoanChunk(List<CreateLoanRequest> chunk) {
+        Map<Long, BigDecimal> loanAmountsByCustomer = chunk.stream()
+                .collect(Collectors.groupingBy(CreateLoanRequest::customerId, LinkedHashMap::new,
+                                               Collectors.reducing(BigDecimal.ZERO, CreateLoanRequest::loanAmount, BigDecimal::add)));
+        loanAmountsByCustomer.forEach(customerService::increaseCustomerUsedCreditLimit);
+
+        return chunk.stream().map(request -> {
+            Loan loan = loanService.persistLoan(request.customerId(), request.loanAmount(), request.numberOfInstallment(), request.interestRate());
+            return new CreateLoanResponse(loan.getId(), loan.getCreateDate(), request.customerId(), request.loanAmount().doubleValue(), request.numberOfInstallment());
+        }).toList();
+    }
+
+    private CreateLoanResponse createLoan(CreateLoanRequest request) {
+        return loanService.createLoan(request.customerId(), request.loanAmount(), request.numberOfInstallment(), request.interestRate());
+    }
+
+    private String validateRequest(CreateLoanRequest request) {
+        if (request == null) {
+            return "Loan request must not be null";
+        }
+
+        Set<ConstraintViolation<CreateLoanRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+
+        try {
+            LoanInstallmentService.checkNumberOfInstallmentIsValid(request.numberOfInstallment());
+            LoanService.checkInterestRateIsValid(request.interestRate());
+            customerService.checkCustomerExists(request.customerId());
+        } catch (IllegalArgumentException | ResourceNotFoundException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    private void checkBatchSizeIsValid(int size) {
+        if (size == 0 || size > maxSize) {
+            log.error("Invalid loan batch size: {}. Valid range is between 1 and {}", size, maxSize);
+            throw new IllegalArgumentException("Loan batch size must be between 1 and " + maxSize);
+        }
+    }
+}
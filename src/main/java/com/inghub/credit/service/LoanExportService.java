@@ -0,0 +1,81 @@
+package com.inghub.credit.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.inghub.credit.model.LoanExportLine;
+import com.inghub.credit.model.dto.LoanDTO;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.model.dto.LoanInstallmentExportRow;
+import com.inghub.credit.repository.LoanInstallmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+@Service
+@Slf4j
+public class LoanExportService {
+
+    private final LoanInstallmentRepository loanInstallmentRepository;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter lineWriter;
+
+    public LoanExportService(LoanInstallmentRepository loanInstallmentRepository, ObjectMapper objectMapper) {
+        this.loanInstallmentRepository = loanInstallmentRepository;
+        this.objectMapper = objectMapper;
+        //the output stream is flushed when its buffer fills up instead of after every line
+        this.lineWriter = objectMapper.writerFor(LoanExportLine.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    //writes every loan of the customer followed by its installments as NDJSON. Rows are read from a cursor and written
+    //one at a time, so memory use does not depend on the number of installments
+    @Transactional(readOnly = true)
+    public long exportLoansByCustomerId(Long customerId, OutputStream outputStream) throws IOException {
+        log.info("Exporting loans and installments for customerId: {}", customerId);
+        long installmentCount = 0;
+
+        try (Stream<LoanInstallmentExportRow> rows = loanInstallmentRepository.streamExportRowsByCustomerId(customerId);
+             JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+            //lines are terminated explicitly and the caller owns the output stream
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            Long currentLoanId = null;
+            Iterator<LoanInstallmentExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                LoanInstallmentExportRow row = iterator.next();
+                if (!Objects.equals(currentLoanId, row.loanId())) {
+                    currentLoanId = row.loanId();
+                    writeLine(generator, LoanExportLine.ofLoan(mapLoanExportRowToDTO(customerId, row)));
+                }
+                writeLine(generator, LoanExportLine.ofInstallment(currentLoanId, mapInstallmentExportRowToDTO(row)));
+                installmentCount++;
+            }
+        }
+
+        log.info("Exported {} installments for customerId: {}", installmentCount, customerId);
+        return installmentCount;
+    }
+
+    private void writeLine(JsonGenerator generator, LoanExportLine line) throws IOException {
+        lineWriter.writeValue(generator, line);
+        generator.writeRaw('\n');
+    }
+
+    private static LoanDTO mapLoanExportRowToDTO(Long customerId, LoanInstallmentExportRow row) {
+        return new LoanDTO(row.loanId(), row.loanInsertDate(), row.loanUpdateDate(), customerId, row.loanAmount(), row.numberOfInstallment(),
+                           row.loanPaid(), row.paidInstallmentCount(), row.remainingAmount(), row.nextDueDate(), row.nextInstallmentAmount());
+    }
+
+    private static LoanInstallmentDTO mapInstallmentExportRowToDTO(LoanInstallmentExportRow row) {
+        return new LoanInstallmentDTO(row.id(), row.insertDate(), row.updateDate(), row.amount().doubleValue(),
+                                      row.paidAmount().doubleValue(), row.dueDate(), row.paymentDate(), row.paid());
+    }
+}
@@ -1,26 +1,35 @@
 package com.inghub.credit.service;
 
 import com.inghub.credit.util.ConstantValues;
+import com.inghub.credit.util.Money;
 import com.inghub.credit.domain.Loan;
 import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.exception.CreditException;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.repository.LoanInstallmentRepository;
+import com.inghub.credit.repository.page.PageCursor;
 import com.inghub.credit.repository.page.PageRequestBuilder;
+import com.inghub.credit.repository.spec.LoanInstallmentSpecification;
 import com.inghub.credit.model.ApiModelPage;
 import com.inghub.credit.model.ListLoanInstallmentsResponse;
 import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -30,45 +39,71 @@ public class LoanInstallmentService {
     private final LoanInstallmentRepository loanInstallmentRepository;
 
     public LoanInstallment findById(Long id) {
-        log.info("Attempting to find LoanInstallment with ID: {}", id);
+        log.debug("Attempting to find LoanInstallment with ID: {}", id);
         Optional<LoanInstallment> loanInstallment = loanInstallmentRepository.findById(id);
         if (loanInstallment.isEmpty()) {
             log.error("LoanInstallment not found with given id: {}", id);
             throw new ResourceNotFoundException("LoanInstallment not found with given id: " + id);
         } else {
-            log.info("Found LoanInstallment with ID: {}", id);
+            log.debug("Found LoanInstallment with ID: {}", id);
             return loanInstallment.get();
         }
     }
 
-    public Page<LoanInstallment> getPaginatedLoanInstallmentsByLoanId(Long loanId, PageRequest pageRequest) {
-        log.info("Fetching paginated LoanInstallments for Loan ID: {}", loanId);
-        return loanInstallmentRepository.findByLoanId(loanId, pageRequest);
-    }
-
-    public List<LoanInstallment> findLoanInstallmentsByLoanIdAndIsPaid(Long loanId, boolean paid) {
-        log.info("Fetching LoanInstallments for Loan ID: {} with paid status: {}", loanId, paid);
-        return loanInstallmentRepository.findByLoanIdAndPaidOrderByDueDate(loanId, paid);
-    }
-
-    public ListLoanInstallmentsResponse searchLoanInstallmentsByLoanId(Long loanId, Integer pageSize, Integer pageNumber, String sort) {
-        log.info("Searching LoanInstallments for Loan ID: {} with pageSize: {}, pageNumber: {}, sort: {}", loanId, pageSize, pageNumber, sort);
+    //reads LoanInstallmentDTO columns only, the read-only transaction skips flushing and dirty checking
+    @Timed(value = "credit.loan.installment.search", description = "Installment searches of a loan")
+    @Transactional(readOnly = true)
+    public ListLoanInstallmentsResponse searchLoanInstallmentsByLoanId(Long loanId, Integer pageSize, Integer pageNumber, String sort, String cursor, boolean withTotal) {
+        log.debug("Searching LoanInstallments for Loan ID: {} with pageSize: {}, pageNumber: {}, sort: {}, cursor: {}, withTotal: {}", loanId, pageSize, pageNumber, sort, cursor, withTotal);
 
         //TODO: check whether the loan exists with given loanId and throw exception?
 
+        if (cursor != null) {
+            return searchLoanInstallmentsByLoanIdAndCursor(loanId, pageSize, sort, cursor);
+        }
+
         PageRequest pageRequest = PageRequestBuilder.getPageRequest(pageSize, pageNumber, sort);
-        Page<LoanInstallment> loanInstallmentsPage = getPaginatedLoanInstallmentsByLoanId(loanId, pageRequest);
-        List<LoanInstallment> loanInstallments = loanInstallmentsPage.getContent();
+        if (!withTotal) {
+            return searchLoanInstallmentsByLoanIdWithoutTotal(loanId, pageRequest);
+        }
+
+        Page<LoanInstallmentDTO> loanInstallmentsPage = loanInstallmentRepository.findDTOsByLoanId(loanId, pageRequest);
+        List<LoanInstallmentDTO> loanInstallments = loanInstallmentsPage.getContent();
 
         ApiModelPage pagingResponse = new ApiModelPage(pageRequest.getPageNumber() + 1, pageRequest.getPageSize(),
                                                        loanInstallmentsPage.getTotalElements(), loanInstallmentsPage.getTotalPages(),
                                                        loanInstallmentsPage.hasNext(), loanInstallmentsPage.hasPrevious());
-        log.info("LoanInstallments search result for Loan ID: {} returned {} installments.", loanId, loanInstallments.size());
-        return new ListLoanInstallmentsResponse(loanId, loanInstallments.stream().map(this::mapLoanInstallmentEntityToDTO).collect(Collectors.toList()), pagingResponse);
+        log.debug("LoanInstallments search result for Loan ID: {} returned {} installments.", loanId, loanInstallments.size());
+        return new ListLoanInstallmentsResponse(loanId, loanInstallments, pagingResponse);
+    }
+
+    //reads pageSize + 1 rows to find out whether there is a next page, so the count query is skipped
+    private ListLoanInstallmentsResponse searchLoanInstallmentsByLoanIdWithoutTotal(Long loanId, PageRequest pageRequest) {
+        Slice<LoanInstallmentDTO> loanInstallmentsSlice = loanInstallmentRepository.findDTOSliceByLoanId(loanId, pageRequest);
+
+        ApiModelPage pagingResponse = ApiModelPage.ofSlice(pageRequest.getPageNumber() + 1, pageRequest.getPageSize(),
+                                                           loanInstallmentsSlice.hasNext(), loanInstallmentsSlice.hasPrevious());
+        log.debug("LoanInstallments search result without total for Loan ID: {} returned {} installments.", loanId, loanInstallmentsSlice.getNumberOfElements());
+        return new ListLoanInstallmentsResponse(loanId, loanInstallmentsSlice.getContent(), pagingResponse);
+    }
+
+    //seeks after the last sort key of the previous page, so the cost does not grow with page depth and no count query is needed
+    private ListLoanInstallmentsResponse searchLoanInstallmentsByLoanIdAndCursor(Long loanId, Integer pageSize, String sort, String cursor) {
+        Sort keysetSort = PageRequestBuilder.getKeysetSort(sort);
+        int limit = PageRequestBuilder.getPageSize(pageSize);
+        KeysetScrollPosition position = PageCursor.decode(cursor, keysetSort, LoanInstallment.class);
+
+        Window<LoanInstallmentDTO> loanInstallmentsWindow = loanInstallmentRepository.scrollLoanInstallmentDTOs(LoanInstallmentSpecification.getSpecificationForLoanId(loanId),
+                                                                                                           keysetSort, limit, position);
+        String nextCursor = loanInstallmentsWindow.hasNext() ? PageCursor.encode(loanInstallmentsWindow.positionAt(loanInstallmentsWindow.size() - 1), keysetSort) : null;
+
+        ApiModelPage pagingResponse = ApiModelPage.ofCursor(limit, loanInstallmentsWindow.hasNext(), !position.isInitial(), nextCursor);
+        log.debug("LoanInstallments cursor search result for Loan ID: {} returned {} installments.", loanId, loanInstallmentsWindow.size());
+        return new ListLoanInstallmentsResponse(loanId, loanInstallmentsWindow.getContent(), pagingResponse);
     }
 
     public static List<LocalDate> createInstallmentDatesByInstallmentCount(int numberOfInstallment) {
-        log.info("Creating installment dates for {} installments.", numberOfInstallment);
+        log.debug("Creating installment dates for {} installments.", numberOfInstallment);
         List<LocalDate> installmentDates = new ArrayList<>(numberOfInstallment);
         LocalDate findFirstDayOfNextMonth = findFirstDayOfNextMonth();
         for (int i = 0; i < numberOfInstallment; i++) {
@@ -84,89 +119,87 @@ public class LoanInstallmentService {
         return today.withDayOfMonth(1).plusMonths(1);
     }
 
+    //loanAmount * (1 + interestRate) rounded half up to cents
     public static BigDecimal calculateTotalAmountToBePaid(BigDecimal loanAmount, int numberOfInstallment, BigDecimal interestRate) {
-        BigDecimal interestRatio = BigDecimal.ONE.add(interestRate);
-        return loanAmount.multiply(interestRatio);
+        return Money.toAmount(Money.totalWithInterest(Money.toMinorUnits(loanAmount), Money.toRateUnits(interestRate)));
     }
 
     public static BigDecimal calculateInstallmentAmount(BigDecimal totalAmountToBePaid, int numberOfInstallment) {
-        return totalAmountToBePaid.divide(new BigDecimal(numberOfInstallment), 2, RoundingMode.HALF_UP);
+        return Money.toAmount(Money.divideHalfUp(Money.toMinorUnits(totalAmountToBePaid), numberOfInstallment));
     }
 
+    //the schedule is calculated in cents, the equal installments share one BigDecimal and the last one carries the rounding remainder
     public List<LoanInstallment> createLoanInstallments(Loan loan, BigDecimal loanAmount, int numberOfInstallment, List<LocalDate> installmentDates, BigDecimal interestRate) {
-        log.info("Creating LoanInstallments for Loan ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", loan.getId(), loanAmount, numberOfInstallment, interestRate);
+        log.debug("Creating LoanInstallments for Loan ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", loan.getId(), loanAmount, numberOfInstallment, interestRate);
 
-        BigDecimal totalAmountToBePaid = calculateTotalAmountToBePaid(loanAmount, numberOfInstallment, interestRate);
-        BigDecimal installmentAmount = calculateInstallmentAmount(totalAmountToBePaid, numberOfInstallment);
+        long loanAmountMinorUnits = Money.toMinorUnits(loanAmount);
+        long interestRateUnits = Money.toRateUnits(interestRate);
+        long installmentAmountMinorUnits = Money.installmentAmount(loanAmountMinorUnits, interestRateUnits, numberOfInstallment);
+        long lastInstallmentAmountMinorUnits = Money.lastInstallmentAmount(loanAmountMinorUnits, interestRateUnits, numberOfInstallment);
+        BigDecimal installmentAmount = Money.toAmount(installmentAmountMinorUnits);
+        BigDecimal lastInstallmentAmount = lastInstallmentAmountMinorUnits == installmentAmountMinorUnits ? installmentAmount : Money.toAmount(lastInstallmentAmountMinorUnits);
 
         List<LoanInstallment> loanInstallments = new ArrayList<>(numberOfInstallment);
-        for (LocalDate installmentDate : installmentDates) {
+        for (int i = 0; i < numberOfInstallment; i++) {
             LoanInstallment loanInstallment = new LoanInstallment();
             loanInstallment.setLoan(loan);
-            loanInstallment.setAmount(installmentAmount);
+            loanInstallment.setAmount(i == numberOfInstallment - 1 ? lastInstallmentAmount : installmentAmount);
             loanInstallment.setPaidAmount(BigDecimal.ZERO);
-            loanInstallment.setDueDate(installmentDate);
+            loanInstallment.setDueDate(installmentDates.get(i));
             loanInstallment.setPaid(false);
             loanInstallments.add(loanInstallment);
         }
-
-        checkTotalInstallmentAmountsValid(loanInstallments, totalAmountToBePaid, installmentAmount);
-        log.info("Created {} LoanInstallments for Loan ID: {}", loanInstallments.size(), loan.getId());
+        log.debug("Created {} LoanInstallments for Loan ID: {}", loanInstallments.size(), loan.getId());
 
         return loanInstallments;
     }
 
-    public void payMultipleLoanInstallments(List<Long> loanInstallmentIds) {
-        log.info("Processing payments for multiple LoanInstallments: {}", loanInstallmentIds);
-        for (Long id : loanInstallmentIds) {
-            LoanInstallment loanInstallment = findById(id);
-            loanInstallment.setPaidAmount(loanInstallment.getAmount());
-            loanInstallment.setPaymentDate(LocalDateTime.now());
-            loanInstallment.setPaid(true);
-            loanInstallmentRepository.save(loanInstallment);
-            log.info("LoanInstallment with ID: {} marked as paid.", id);
-        }
-    }
+    //pays the unpaid installments of the loan due until lastDueDate, which must be exactly installmentCount of them
+    public void payLoanInstallmentsDueUntil(Long loanId, LocalDate lastDueDate, int installmentCount) {
+        log.debug("Paying {} LoanInstallments of Loan ID: {} due until {}", installmentCount, loanId, lastDueDate);
 
-    //Installments have due date that still more than 3 calendar months cannot be paid.
-    public static boolean checkInstallmentHaveDueDateMoreThanGivenDurationInMonths(LocalDate installmentDueDate, int months) {
-        log.info("Checking if LoanInstallment with due date {} is more than {} months from now.", installmentDueDate, months);
-        LocalDate currentDate = LocalDate.now();
-        LocalDate dateAfterGivenMonthsFromNow = currentDate.plusMonths(months);
-        boolean result = installmentDueDate.isAfter(dateAfterGivenMonthsFromNow);
-        log.info("LoanInstallment with due date {} is {} months from now.", installmentDueDate, result ? "more" : "not more");
-        return result;
+        int paidCount = loanInstallmentRepository.markInstallmentsAsPaidDueUntil(loanId, lastDueDate, LocalDateTime.now());
+        if (paidCount != installmentCount) {
+            log.error("Expected to pay {} LoanInstallments of Loan ID: {} due until {} but {} were updated", installmentCount, loanId, lastDueDate, paidCount);
+            throw new CreditException("Installments of loan " + loanId + " do not match the loan summary, expected " + installmentCount + " unpaid installments due until " + lastDueDate + " but found " + paidCount);
+        }
+        log.debug("{} LoanInstallments marked as paid.", paidCount);
     }
 
-    public List<LoanInstallment> findEligibleInstallments(List<LoanInstallment> loanInstallmentList, BigDecimal paidAmount) {
-        log.debug("Finding installments that can be paid with amount: {}", paidAmount);
-
-        Queue<LoanInstallment> installPaymentQueue = new LinkedList<>(loanInstallmentList);
-        List<LoanInstallment> ableToPayInstallments = new ArrayList<>();
+    //the payment is matched in cents against the loan summary instead of the installment rows: the unpaid installments
+    //are due monthly from nextDueDate and all of them are nextInstallmentAmount except the last one, which carries the
+    //rest of remainingAmount. Installments are paid in due date order, wholly or not at all, and only the ones due within
+    //paymentWindowMonths from today are payable
+    public static int countEligibleInstallments(Loan loan, BigDecimal paidAmount, int paymentWindowMonths) {
+        log.debug("Counting installments of Loan ID: {} that can be paid with amount: {}", loan.getId(), paidAmount);
 
-        while (!installPaymentQueue.isEmpty() && paidAmount.compareTo(BigDecimal.ZERO) > 0) {
-            LoanInstallment nextInstallment = installPaymentQueue.peek(); // Get the earliest installment.
-            log.debug("Evaluating installment with ID: {}", nextInstallment.getId());
-
-            //Installments have due date that still more than 3 calendar months cannot be paid.
-            boolean installmentDueDateIsAfter3Months = checkInstallmentHaveDueDateMoreThanGivenDurationInMonths(nextInstallment.getDueDate(), 3);
-            if (installmentDueDateIsAfter3Months) {
-                log.info("Stopping payments. Installment with ID {} has a due date more than 3 months away.", nextInstallment.getId());
-                break;
-            }
+        int unpaidCount = loan.getNumberOfInstallment() - loan.getPaidInstallmentCount();
+        if (unpaidCount <= 0) {
+            return 0;
+        }
 
-            if (paidAmount.compareTo(nextInstallment.getAmount()) >= 0) {
-                log.debug("Adding installment with ID: {} to payment list", nextInstallment.getId());
-                paidAmount = paidAmount.subtract(nextInstallment.getAmount()); // Deduct the installment amount from the payment.
-                ableToPayInstallments.add(nextInstallment);
-                installPaymentQueue.poll(); // Remove the paid installment and to list.
-            } else {
-                log.info("Insufficient funds to pay installment with ID: {}", nextInstallment.getId());
+        //Installments have due date that still more than the payment window cannot be paid.
+        LocalDate lastPayableDueDate = LocalDate.now().plusMonths(paymentWindowMonths);
+        if (loan.getNextDueDate().isAfter(lastPayableDueDate)) {
+            log.debug("Stopping payments. Next installment of Loan ID: {} has a due date more than {} months away.", loan.getId(), paymentWindowMonths);
+            return 0;
+        }
+        int payableCount = (int) Math.min(unpaidCount, ChronoUnit.MONTHS.between(loan.getNextDueDate(), lastPayableDueDate) + 1);
+
+        long installmentAmount = Money.toMinorUnits(loan.getNextInstallmentAmount());
+        long lastInstallmentAmount = Money.toMinorUnits(loan.getRemainingAmount()) - installmentAmount * (unpaidCount - 1);
+        long remainingAmount = Money.toMinorUnitsDown(paidAmount);
+        int eligibleCount = 0;
+        while (eligibleCount < payableCount) {
+            long nextAmount = eligibleCount == unpaidCount - 1 ? lastInstallmentAmount : installmentAmount;
+            if (remainingAmount <= 0 || remainingAmount < nextAmount) {
                 break; // Stop if the amount is insufficient to pay the next installment.
             }
+            remainingAmount -= nextAmount; // Deduct the installment amount from the payment.
+            eligibleCount++;
         }
-        log.info("Total installments count that can be paid: {}", ableToPayInstallments.size());
-        return ableToPayInstallments;
+        log.debug("Total installments count that can be paid: {}", eligibleCount);
+        return eligibleCount;
     }
 
     public static void checkNumberOfInstallmentIsValid(int numberOfInstallment) {
@@ -178,26 +211,4 @@ public class LoanInstallmentService {
         log.debug("Number of installments {} is valid.", numberOfInstallment);
     }
 
-
-    private LoanInstallmentDTO mapLoanInstallmentEntityToDTO(LoanInstallment loanInstallment) {
-        log.debug("Mapping LoanInstallment entity to DTO for LoanInstallment ID: {}", loanInstallment.getId());
-        return new LoanInstallmentDTO(loanInstallment.getId(), loanInstallment.getCreateDate(), loanInstallment.getUpdateDate(),
-                                      loanInstallment.getAmount().doubleValue(), loanInstallment.getPaidAmount().doubleValue(), loanInstallment.getDueDate(),
-                                      loanInstallment.getPaymentDate(), loanInstallment.isPaid());
-    }
-
-    private void checkTotalInstallmentAmountsValid(List<LoanInstallment> installmentList, BigDecimal totalAmountToBePaid, BigDecimal installmentAmount) {
-
-        BigDecimal totalInstallmentAmount = installmentAmount.multiply(new BigDecimal(installmentList.size()));
-        BigDecimal difference = totalInstallmentAmount.subtract(totalAmountToBePaid);
-
-        if(difference.compareTo(BigDecimal.ZERO) > 0) {
-            installmentList.get(installmentList.size()-1).setAmount(installmentAmount.add(difference));
-        }
-        else {
-            installmentList.get(installmentList.size()-1).setAmount(installmentAmount.subtract(difference));
-        }
-
-    }
-
-}
\ No newline at end of file
+}
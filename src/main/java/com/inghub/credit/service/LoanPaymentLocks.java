@@ -0,0 +1,108 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.exception.CreditException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped in-process locks that serialize the payments of one loan, so concurrent payments of a hot loan queue here
+ * instead of on the customer and loan row locks of the database and failing their conditional updates. Payments of
+ * different loans only wait for each other when their ids map to the same one of {@code credit.loan.payment-lock.stripes}.
+ * <p>
+ * The lock has to be taken outside the payment transaction, otherwise it would be released before the commit. It does
+ * not replace the database checks, payments of other nodes and the payment file job still rely on them.
+ */
+@Component
+@Slf4j
+public class LoanPaymentLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutNanos;
+    private final Counter contendedCounter;
+    private final Timer waitTimer;
+
+    public LoanPaymentLocks(MeterRegistry meterRegistry,
+                            @Value("${credit.loan.payment-lock.stripes}") int stripeCount,
+                            @Value("${credit.loan.payment-lock.timeout}") Duration timeout) {
+        if (stripeCount < 1 || stripeCount > 1 << 16) {
+            throw new IllegalArgumentException("Payment lock stripe count must be between 1 and 65536: " + stripeCount);
+        }
+        //rounded up to a power of two, so the stripe is picked with a mask
+        int size = Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new ReentrantLock[Math.max(size, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = stripes.length - 1;
+        this.timeoutNanos = timeout.toNanos();
+        this.contendedCounter = Counter.builder("credit.loan.payment.lock.contended")
+                .description("Payments that waited for another payment of a loan on the same stripe")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("credit.loan.payment.lock.wait")
+                .description("Time contended payments waited for their stripe")
+                .register(meterRegistry);
+        Gauge.builder("credit.loan.payment.lock.queued", this, LoanPaymentLocks::queuedCount)
+                .description("Payments waiting for their stripe")
+                .register(meterRegistry);
+    }
+
+    public <T> T withLock(Long loanId, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripeIndex(loanId)];
+        if (!lock.tryLock()) {
+            contendedCounter.increment();
+            acquireContended(loanId, lock);
+        }
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    int stripeIndex(Long loanId) {
+        //spreads sequential ids, the low bits of the hash alone would map neighbouring loans to neighbouring stripes only
+        int hash = Long.hashCode(loanId) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void acquireContended(Long loanId, ReentrantLock lock) {
+        long startNanos = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CreditException("Interrupted while waiting for another payment of loan: " + loanId);
+        } finally {
+            waitTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            log.error("Payment of loan: {} waited {} ms for other payments of the loan", loanId, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+            throw new CreditException("Another payment of loan " + loanId + " is in progress, please retry");
+        }
+        log.debug("Payment of loan: {} waited {} µs for its stripe", loanId, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    private double queuedCount() {
+        long queued = 0;
+        for (ReentrantLock stripe : stripes) {
+            queued += stripe.getQueueLength();
+        }
+        return queued;
+    }
+}
@@ -1,71 +1,111 @@
 package com.inghub.credit.service;
 
-import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.domain.Loan;
 import com.inghub.credit.exception.CreditException;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.model.PayLoanResponse;
-import lombok.RequiredArgsConstructor;
+import com.inghub.credit.retry.RetryOnConflict;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.time.LocalDate;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class LoanPaymentService {
 
     private final LoanService loanService;
     private final LoanInstallmentService loanInstallmentService;
     private final CustomerService customerService;
+    private final PaymentLedgerService paymentLedgerService;
+    private final DistributionSummary installmentsPerPayment;
+
+    @Value("${credit.loan.payment-window-months}")
+    private int paymentWindowMonths;
+
+    @Value("${credit.loan.payment-ledger.enabled}")
+    private boolean paymentLedgerEnabled;
+
+    public LoanPaymentService(LoanService loanService,
+                              LoanInstallmentService loanInstallmentService,
+                              CustomerService customerService,
+                              PaymentLedgerService paymentLedgerService,
+                              MeterRegistry meterRegistry) {
+        this.loanService = loanService;
+        this.loanInstallmentService = loanInstallmentService;
+        this.customerService = customerService;
+        this.paymentLedgerService = paymentLedgerService;
+        this.installmentsPerPayment = DistributionSummary.builder("credit.loan.payment.installments")
+                .description("Installments paid by one payment")
+                .baseUnit("installments")
+                .register(meterRegistry);
+    }
 
+    //the decision is taken from the summary columns of the loan row, the installments are paid by due date with one
+    //bulk update and the schedule is never loaded. In the ledger mode the payment is appended to the payment ledger
+    //instead and the rows are updated by PaymentLedgerProjector. Without it a loan with unprojected entries is not paid
+    @Timed(value = "credit.loan.pay", description = "Loan payments")
+    @RetryOnConflict
     @Transactional
     public PayLoanResponse payLoan(Long loanId, BigDecimal paidAmount) {
-        log.info("Starting payLoan with loanId: {} and paidAmount: {}", loanId, paidAmount);
-
-        List<LoanInstallment> unPaidInstallmentList = loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false);
-        if (unPaidInstallmentList.isEmpty()) {
+        log.debug("Starting payLoan with loanId: {} and paidAmount: {}", loanId, paidAmount);
+
+        //the ledger is read in both modes, entries appended before the ledger mode was turned off may not be projected yet
+        Loan readLoan = loanService.findById(loanId);
+        Loan loan = paymentLedgerService.withLedgerPayments(readLoan);
+        if (!paymentLedgerEnabled && loan != readLoan) {
+            log.error("Loan with ID: {} has payments in the payment ledger that are not applied yet", loanId);
+            throw new CreditException("Payments of loan " + loanId + " are not applied yet, please retry");
+        }
+        if (loan.isPaid()) {
             log.error("No unpaid installments found for loanId: {}", loanId);
             throw new ResourceNotFoundException("Unpaid installment could not found for given loan id: " + loanId);
         }
 
         //find installments to be paid with paid amount
-        List<LoanInstallment> eligibleInstallmentList = loanInstallmentService.findEligibleInstallments(unPaidInstallmentList, paidAmount);
-        if (eligibleInstallmentList.isEmpty()) {
+        int eligibleInstallmentCount = LoanInstallmentService.countEligibleInstallments(loan, paidAmount, paymentWindowMonths);
+        if (eligibleInstallmentCount == 0) {
             log.error("No installments are eligible for payment for loanId: {}", loanId);
             throw new CreditException("No installments are eligible for payment for loanId: " + loanId);
         }
 
-        BigDecimal installmentAmount = unPaidInstallmentList.get(0).getAmount();
+        BigDecimal installmentAmount = loan.getNextInstallmentAmount();
         log.debug("First unpaid installment amount for loanId {} is {}", loanId, installmentAmount);
 
         //Installments should be paid wholly or not at all.
         checkPaymentAmountMoreThanInstallmentAmount(installmentAmount, paidAmount);
-
-        int eligibleInstallmentCount = eligibleInstallmentList.size();
-        log.info("{} installments can be paid for loanId: {}", eligibleInstallmentCount, loanId);
-
-        //pay eligible installments
-        loanInstallmentService.payMultipleLoanInstallments(eligibleInstallmentList.stream().map(LoanInstallment::getId).collect(Collectors.toList()));
-        log.info("Paid {} installments for loanId: {}", eligibleInstallmentCount, loanId);
-
-        //if all installments are paid, update Loan entity
-        boolean allInstallmentsPaid = unPaidInstallmentList.size() == eligibleInstallmentList.size();
-        if (allInstallmentsPaid) {
-            log.info("All installments paid for loanId: {}", loanId);
-            loanService.updateLoanIsPaidStatus(loanId, true);
+        log.debug("{} installments can be paid for loanId: {}", eligibleInstallmentCount, loanId);
+
+        //the last installment carries the rounding remainder, so a payment up to it pays the whole remaining amount
+        boolean allInstallmentsPaid = loan.getPaidInstallmentCount() + eligibleInstallmentCount == loan.getNumberOfInstallment();
+        BigDecimal totalDeductedAmount = allInstallmentsPaid ? loan.getRemainingAmount() : installmentAmount.multiply(BigDecimal.valueOf(eligibleInstallmentCount));
+
+        if (paymentLedgerEnabled) {
+            paymentLedgerService.appendPayment(loan, eligibleInstallmentCount, totalDeductedAmount);
+            log.debug("Appended payment of {} installments for loanId: {} to the payment ledger", eligibleInstallmentCount, loanId);
+        } else {
+            //rows are locked in the order customer, loan, installments like in saveLoan, so the two never wait on each other
+            //in a cycle. The conditional summary update fails when another payment of the loan committed since it was read,
+            //the whole payment is then retried by @RetryOnConflict
+            long customerId = loan.getCustomer().getId();
+            log.debug("Decreasing credit limit for customerId: {} by {}", customerId, totalDeductedAmount);
+            customerService.decreaseCustomerUsedCreditLimit(customerId, totalDeductedAmount);
+
+            //taken before the summary moves past the paid installments
+            LocalDate lastPaidDueDate = loan.getNextDueDate().plusMonths(eligibleInstallmentCount - 1);
+            loanService.recordLoanPayment(loan, eligibleInstallmentCount, totalDeductedAmount);
+            loanInstallmentService.payLoanInstallmentsDueUntil(loanId, lastPaidDueDate, eligibleInstallmentCount);
+            log.debug("Paid {} installments for loanId: {}", eligibleInstallmentCount, loanId);
         }
+        installmentsPerPayment.record(eligibleInstallmentCount);
 
-        //update customer used credit limit according to paid installment amount
-        long customerId = unPaidInstallmentList.get(0).getLoan().getCustomer().getId();
-        BigDecimal totalDeductedAmount = installmentAmount.multiply(BigDecimal.valueOf(eligibleInstallmentCount));
-        log.debug("Decreasing credit limit for customerId: {} by {}", customerId, totalDeductedAmount);
-        customerService.decreaseCustomerUsedCreditLimit(customerId, totalDeductedAmount);
-
-        log.info("Completed payLoan for loanId: {}", loanId);
+        log.debug("Completed payLoan for loanId: {}", loanId);
         return new PayLoanResponse(loanId, eligibleInstallmentCount, totalDeductedAmount.doubleValue(), allInstallmentsPaid);
     }
 
@@ -3,28 +3,38 @@ package com.inghub.credit.service;
 import com.inghub.credit.util.ConstantValues;
 import com.inghub.credit.domain.Customer;
 import com.inghub.credit.domain.Loan;
+import com.inghub.credit.domain.LoanSummary;
 import com.inghub.credit.domain.LoanInstallment;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.repository.LoanRepository;
+import com.inghub.credit.retry.RetryOnConflict;
 import com.inghub.credit.repository.spec.LoanSpecification;
+import com.inghub.credit.repository.page.PageCursor;
 import com.inghub.credit.repository.page.PageRequestBuilder;
 import com.inghub.credit.model.ApiModelPage;
 import com.inghub.credit.model.CreateLoanResponse;
 import com.inghub.credit.model.ListLoanResponse;
 import com.inghub.credit.model.dto.LoanDTO;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.OffsetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -34,64 +44,125 @@ public class LoanService {
     private final LoanRepository loanRepository;
     private final CustomerService customerService;
     private final LoanInstallmentService loanInstallmentService;
+    private final EntityManager entityManager;
 
     public Loan findById(Long id) {
-        log.info("Attempting to find Loan with ID: {}", id);
+        log.debug("Attempting to find Loan with ID: {}", id);
         Optional<Loan> loan = loanRepository.findById(id);
         if (loan.isEmpty()) {
             log.error("Loan not found with given id: {}", id);
             throw new ResourceNotFoundException("Loan not found with given id: " + id);
         } else {
-            log.info("Found Loan with ID: {}", id);
+            log.debug("Found Loan with ID: {}", id);
             return loan.get();
         }
     }
 
-    public void updateLoanIsPaidStatus(Long loanId, boolean paid) {
-        log.info("Updating Loan with ID: {} to paid status: {}", loanId, paid);
-        Loan loan = findById(loanId);
-        loan.setPaid(paid);
-        loanRepository.save(loan);
-        log.info("Loan with ID: {} updated to paid status: {}", loanId, paid);
+    //moves the summary of the loan, as it was read, past the paid installments. The bulk update bypasses the
+    //persistence context, so the new summary is copied onto the loan and a managed loan is detached, a later read of
+    //the loan in the same transaction, like the next payment of a payment file batch, loads the row again instead of
+    //the old summary
+    public void recordLoanPayment(Loan loan, int paidInstallmentCount, BigDecimal paidAmount) {
+        log.debug("Recording payment of {} installments with amount {} for Loan ID: {}", paidInstallmentCount, paidAmount, loan.getId());
+        LoanSummary summary = loan.summaryAfterPayment(paidInstallmentCount, paidAmount);
+
+        int updatedCount = loanRepository.recordPayment(loan.getId(), loan.getPaidInstallmentCount(), paidInstallmentCount, paidAmount,
+                                                        summary.nextDueDate(), summary.nextInstallmentAmount(), summary.paid(), LocalDateTime.now());
+        if (updatedCount == 0) {
+            log.warn("Loan with ID: {} was paid by another payment since it was read", loan.getId());
+            throw new OptimisticLockingFailureException("Loan was paid by another payment, please retry. loanId: " + loan.getId());
+        }
+        if (entityManager.contains(loan)) {
+            entityManager.detach(loan);
+        }
+        loan.applySummary(summary);
+        if (loan.getVersion() != null) {
+            loan.setVersion(loan.getVersion() + 1);
+        }
+        log.debug("Loan with ID: {} has {} unpaid installments left", loan.getId(), loan.getNumberOfInstallment() - summary.paidInstallmentCount());
     }
 
-    public ListLoanResponse searchLoansByCustomerId(Long customerId, BigDecimal loanAmount, Integer installmentCount, Boolean paid, Integer pageSize, Integer pageNumber, String sort) {
-        log.info("Searching loans for customerId: {}, loanAmount: {}, installmentCount: {}, paid: {}, pageSize: {}, pageNumber: {}, sort: {}",
-                 customerId, loanAmount, installmentCount, paid, pageSize, pageNumber, sort);
+    //reads LoanDTO columns only, the read-only transaction skips flushing and dirty checking
+    @Timed(value = "credit.loan.search", description = "Loan searches of a customer")
+    @Transactional(readOnly = true)
+    public ListLoanResponse searchLoansByCustomerId(Long customerId, BigDecimal loanAmount, Integer installmentCount, Boolean paid, Integer pageSize, Integer pageNumber, String sort, String cursor, boolean withTotal) {
+        log.debug("Searching loans for customerId: {}, loanAmount: {}, installmentCount: {}, paid: {}, pageSize: {}, pageNumber: {}, sort: {}, cursor: {}, withTotal: {}",
+                 customerId, loanAmount, installmentCount, paid, pageSize, pageNumber, sort, cursor, withTotal);
 
-        //TODO: check whether the customer exists with given customerId and throw exception?
+        customerService.checkCustomerExists(customerId);
+
+        Specification<Loan> spec = LoanSpecification.getSpecificationForLoan(customerId, loanAmount, installmentCount, paid);
+        if (cursor != null) {
+            return searchLoansByCursor(spec, pageSize, sort, cursor);
+        }
 
         log.debug("Building page request with pageSize: {}, pageNumber: {}, sort: {}", pageSize, pageNumber, sort);
         PageRequest pageRequest = PageRequestBuilder.getPageRequest(pageSize, pageNumber, sort);
-        Specification<Loan> spec = LoanSpecification.getSpecificationForLoan(customerId, loanAmount, installmentCount, paid);
-        Page<Loan> loansPage = loanRepository.findAll(spec, pageRequest);
-        List<Loan> loans = loansPage.getContent();
+        if (!withTotal) {
+            return searchLoansWithoutTotal(spec, pageRequest);
+        }
+
+        Page<LoanDTO> loansPage = loanRepository.findLoanDTOs(spec, pageRequest);
+        List<LoanDTO> loans = loansPage.getContent();
 
         ApiModelPage pagingResponse = new ApiModelPage(pageRequest.getPageNumber() + 1, pageRequest.getPageSize(),
                                                        loansPage.getTotalElements(), loansPage.getTotalPages(),
                                                        loansPage.hasNext(), loansPage.hasPrevious());
 
-        log.info("Returning {} loans for the search criteria", loans.size());
-        return new ListLoanResponse(loans.stream().map(this::mapLoanEntityToDTO).collect(Collectors.toList()), pagingResponse);
+        log.debug("Returning {} loans for the search criteria", loans.size());
+        return new ListLoanResponse(loans, pagingResponse);
+    }
+
+    //reads pageSize + 1 rows to find out whether there is a next page, so the count query is skipped
+    private ListLoanResponse searchLoansWithoutTotal(Specification<Loan> spec, PageRequest pageRequest) {
+        OffsetScrollPosition position = PageRequestBuilder.getScrollPosition(pageRequest);
+        Window<LoanDTO> loansWindow = loanRepository.scrollLoanDTOs(spec, pageRequest.getSort(), pageRequest.getPageSize(), position);
+
+        ApiModelPage pagingResponse = ApiModelPage.ofSlice(pageRequest.getPageNumber() + 1, pageRequest.getPageSize(),
+                                                           loansWindow.hasNext(), pageRequest.hasPrevious());
+        log.debug("Returning {} loans without total for the search criteria", loansWindow.size());
+        return new ListLoanResponse(loansWindow.getContent(), pagingResponse);
+    }
+
+    //seeks after the last sort key of the previous page, so the cost does not grow with page depth and no count query is needed
+    private ListLoanResponse searchLoansByCursor(Specification<Loan> spec, Integer pageSize, String sort, String cursor) {
+        Sort keysetSort = PageRequestBuilder.getKeysetSort(sort);
+        int limit = PageRequestBuilder.getPageSize(pageSize);
+        KeysetScrollPosition position = PageCursor.decode(cursor, keysetSort, Loan.class);
+
+        Window<LoanDTO> loansWindow = loanRepository.scrollLoanDTOs(spec, keysetSort, limit, position);
+        String nextCursor = loansWindow.hasNext() ? PageCursor.encode(loansWindow.positionAt(loansWindow.size() - 1), keysetSort) : null;
+
+        ApiModelPage pagingResponse = ApiModelPage.ofCursor(limit, loansWindow.hasNext(), !position.isInitial(), nextCursor);
+        log.debug("Returning {} loans for the cursor search criteria", loansWindow.size());
+        return new ListLoanResponse(loansWindow.getContent(), pagingResponse);
     }
 
+    @Timed(value = "credit.loan.create", description = "Loan creations including the credit limit reservation")
+    @RetryOnConflict
     @Transactional
     public CreateLoanResponse createLoan(Long customerId, BigDecimal loanAmount, int numberOfInstallment, BigDecimal interestRate) {
-        log.info("Creating loan for Customer ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", customerId, loanAmount, numberOfInstallment, interestRate);
+        log.debug("Creating loan for Customer ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", customerId, loanAmount, numberOfInstallment, interestRate);
         Loan loan = saveLoan(customerId, loanAmount, numberOfInstallment, interestRate);
-        log.info("Loan created with ID: {}", loan.getId());
+        log.debug("Loan created with ID: {}", loan.getId());
         return new CreateLoanResponse(loan.getId(), loan.getCreateDate(), customerId, loanAmount.doubleValue(), numberOfInstallment);
     }
 
+    @RetryOnConflict
     @Transactional
     public Loan saveLoan(long customerId, BigDecimal loanAmount, int numberOfInstallment, BigDecimal interestRate) {
-        log.info("Saving loan for Customer ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", customerId, loanAmount, numberOfInstallment, interestRate);
-        customerService.checkCustomerHasEnoughLimitToGetNewLoan(customerId, loanAmount);
+        log.debug("Saving loan for Customer ID: {} with loanAmount: {}, numberOfInstallments: {}, interestRate: {}", customerId, loanAmount, numberOfInstallment, interestRate);
         LoanInstallmentService.checkNumberOfInstallmentIsValid(numberOfInstallment);
         checkInterestRateIsValid(interestRate);
 
-        Customer customer = customerService.findById(customerId);
+        //checks the available limit and reserves it in one statement. The customer row is locked first, like in payLoan
         customerService.increaseCustomerUsedCreditLimit(customerId, loanAmount);
+        return persistLoan(customerId, loanAmount, numberOfInstallment, interestRate);
+    }
+
+    //creates the loan and its installment schedule, the caller validates the request and reserves the credit limit
+    Loan persistLoan(long customerId, BigDecimal loanAmount, int numberOfInstallment, BigDecimal interestRate) {
+        Customer customer = customerService.getReferenceById(customerId);
 
         Loan loan = new Loan();
         List<LocalDate> installmentDates = LoanInstallmentService.createInstallmentDatesByInstallmentCount(numberOfInstallment);
@@ -102,7 +173,11 @@ public class LoanService {
         loan.setLoanAmount(loanAmount);
         loan.setNumberOfInstallment(numberOfInstallment);
         loan.setLoanInstallments(installments);
-        log.info("Loan saved with ID: {}", loan.getId());
+        loan.setPaidInstallmentCount(0);
+        loan.setRemainingAmount(LoanInstallmentService.calculateTotalAmountToBePaid(loanAmount, numberOfInstallment, interestRate));
+        loan.setNextDueDate(installments.get(0).getDueDate());
+        loan.setNextInstallmentAmount(installments.get(0).getAmount());
+        log.debug("Loan saved with ID: {}", loan.getId());
         return loanRepository.save(loan);
     }
 
@@ -114,11 +189,4 @@ public class LoanService {
         }
         log.debug("Interest rate {} is valid.", interestRate);
     }
-
-    private LoanDTO mapLoanEntityToDTO(Loan loan) {
-        log.debug("Mapping Loan entity to DTO for Loan ID: {}", loan.getId());
-        return new LoanDTO(loan.getId(), loan.getCreateDate(), loan.getUpdateDate(),
-                           loan.getCustomer().getId(), loan.getLoanAmount().doubleValue(), loan.getNumberOfInstallment(),
-                           loan.isPaid());
-    }
 }
\ No newline at end of file
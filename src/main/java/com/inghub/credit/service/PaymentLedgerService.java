@@ -0,0 +1,121 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.domain.LoanSummary;
+import com.inghub.credit.domain.PaymentLedgerEntry;
+import com.inghub.credit.exception.CreditException;
+import com.inghub.credit.repository.PaymentLedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Payments of the ledger mode ({@code credit.loan.payment-ledger.enabled}): a payment is one insert into the
+ * append-only {@code payment_ledger} table, {@link com.inghub.credit.job.PaymentLedgerProjector} applies it to the
+ * installments, the loan summary and the used credit limit of the customer later.
+ * <p>
+ * Until then the loan row is behind its ledger, so a payment continues from the latest entry of the loan when that is
+ * ahead of the row. Reads that must see earlier payments wait for the projector with {@link #awaitLoanPayments} and
+ * {@link #awaitCustomerPayments}.
+ */
+@Service
+@Slf4j
+public class PaymentLedgerService {
+
+    private final PaymentLedgerRepository paymentLedgerRepository;
+    private final Duration waitTimeout;
+    private final Duration pollInterval;
+
+    public PaymentLedgerService(PaymentLedgerRepository paymentLedgerRepository,
+                                @Value("${credit.loan.payment-ledger.wait-timeout}") Duration waitTimeout,
+                                @Value("${credit.loan.payment-ledger.poll-interval}") Duration pollInterval) {
+        this.paymentLedgerRepository = paymentLedgerRepository;
+        this.waitTimeout = waitTimeout;
+        this.pollInterval = pollInterval;
+    }
+
+    // returns the loan as its latest ledger entry left it, a detached copy that is never flushed, or the loan itself
+    // when every payment is projected. Throws when the latest entry has a projection error
+    public Loan withLedgerPayments(Loan loan) {
+        Optional<PaymentLedgerEntry> latestEntry = paymentLedgerRepository.findFirstByLoanIdOrderByFirstInstallmentDesc(loan.getId());
+        if (latestEntry.isEmpty() || latestEntry.get().getLastInstallment() <= loan.getPaidInstallmentCount()) {
+            return loan;
+        }
+        PaymentLedgerEntry entry = latestEntry.get();
+        //a payment on top of entries the projector left out would be left out as well
+        if (entry.getProjectionError() != null) {
+            log.error("Loan with ID: {} has payment ledger entries that could not be applied: {}", loan.getId(), entry.getProjectionError());
+            throw new CreditException("Payments of loan " + loan.getId() + " could not be applied, the loan cannot be paid until they are");
+        }
+        log.debug("Loan with ID: {} continues from ledger entry: {}", loan.getId(), entry.getId());
+
+        Loan ledgerLoan = new Loan();
+        ledgerLoan.setId(loan.getId());
+        ledgerLoan.setCustomer(loan.getCustomer());
+        ledgerLoan.setLoanAmount(loan.getLoanAmount());
+        ledgerLoan.setInterestRate(loan.getInterestRate());
+        ledgerLoan.setNumberOfInstallment(loan.getNumberOfInstallment());
+        ledgerLoan.applySummary(new LoanSummary(entry.getLastInstallment(), entry.getRemainingAmount(), entry.getNextDueDate(),
+                                                entry.getNextInstallmentAmount(), entry.isLoanPaid()));
+        return ledgerLoan;
+    }
+
+    //appends the payment of installmentCount installments from the summary of the loan, as it was read. A concurrent
+    //payment that continued from the same summary has inserted the same first installment, this one is then retried
+    public PaymentLedgerEntry appendPayment(Loan loan, int installmentCount, BigDecimal paidAmount) {
+        log.debug("Appending payment of {} installments with amount {} for Loan ID: {}", installmentCount, paidAmount, loan.getId());
+        LoanSummary summary = loan.summaryAfterPayment(installmentCount, paidAmount);
+
+        PaymentLedgerEntry entry = new PaymentLedgerEntry();
+        entry.setLoanId(loan.getId());
+        entry.setCustomerId(loan.getCustomer().getId());
+        entry.setFirstInstallment(loan.getPaidInstallmentCount() + 1);
+        entry.setInstallmentCount(installmentCount);
+        entry.setPaidAmount(paidAmount);
+        entry.setLastDueDate(loan.getNextDueDate().plusMonths(installmentCount - 1));
+        entry.setRemainingAmount(summary.remainingAmount());
+        entry.setNextDueDate(summary.nextDueDate());
+        entry.setNextInstallmentAmount(summary.nextInstallmentAmount());
+        entry.setLoanPaid(summary.paid());
+        try {
+            return paymentLedgerRepository.saveAndFlush(entry);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Installment {} of loan with ID: {} was paid by another payment since it was read", entry.getFirstInstallment(), loan.getId());
+            throw new OptimisticLockingFailureException("Loan was paid by another payment, please retry. loanId: " + loan.getId(), e);
+        }
+    }
+
+    //read-your-writes for the installments and summary of one loan
+    public void awaitLoanPayments(Long loanId) {
+        await("loan " + loanId, () -> paymentLedgerRepository.existsUnprojectedByLoanId(loanId));
+    }
+
+    //read-your-writes for the loans of a customer and the used credit limit
+    public void awaitCustomerPayments(Long customerId) {
+        await("customer " + customerId, () -> paymentLedgerRepository.existsUnprojectedByCustomerId(customerId));
+    }
+
+    private void await(String owner, BooleanSupplier hasUnprojectedPayments) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (hasUnprojectedPayments.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                log.error("Payments of {} are still not projected after {}", owner, waitTimeout);
+                throw new CreditException("Payments of " + owner + " are not applied yet, please retry");
+            }
+            log.debug("Waiting for the payments of {} to be projected", owner);
+            try {
+                Thread.sleep(pollInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CreditException("Interrupted while waiting for the payments of " + owner);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.inghub.credit.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Money arithmetic in primitive {@code long} minor units (cents). Amounts are converted from and to {@link BigDecimal}
+ * only at the persistence and JSON boundary, the schedule and payment calculations in between do not allocate.
+ * <p>
+ * Rounding rules: interest rates are kept with {@value #RATE_SCALE} decimals, the installment amount is the total
+ * to be paid divided by the installment count and rounded half up to cents, and the rounding remainder goes to the
+ * last installment, so the installments always add up to the total rounded half up to cents. Payment amounts are
+ * rounded down to cents instead, a fraction of a cent never pays for a cent that was not paid.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+    public static final int RATE_SCALE = 9;
+
+    private static final long RATE_ONE = 1_000_000_000L;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, RATE_ONE};
+
+    private Money() {
+    }
+
+    public static long toMinorUnits(BigDecimal amount) {
+        return toUnits(amount, SCALE, RoundingMode.HALF_UP);
+    }
+
+    public static long toMinorUnitsDown(BigDecimal amount) {
+        return toUnits(amount, SCALE, RoundingMode.DOWN);
+    }
+
+    public static BigDecimal toAmount(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public static long toRateUnits(BigDecimal rate) {
+        return toUnits(rate, RATE_SCALE, RoundingMode.HALF_UP);
+    }
+
+    //principal * (1 + rate) rounded half up to cents
+    public static long totalWithInterest(long principalMinorUnits, long rateUnits) {
+        return divideHalfUp(totalWithInterestInRateUnits(principalMinorUnits, rateUnits), RATE_ONE);
+    }
+
+    //the installment is rounded from the unrounded total, rounding the total to cents first could move it by a cent
+    public static long installmentAmount(long principalMinorUnits, long rateUnits, int installmentCount) {
+        return divideHalfUp(totalWithInterestInRateUnits(principalMinorUnits, rateUnits), Math.multiplyExact(RATE_ONE, installmentCount));
+    }
+
+    //the total minus the equal installments before it, so it carries the rounding remainder, positive or negative
+    public static long lastInstallmentAmount(long principalMinorUnits, long rateUnits, int installmentCount) {
+        long installment = installmentAmount(principalMinorUnits, rateUnits, installmentCount);
+        return totalWithInterest(principalMinorUnits, rateUnits) - installment * (installmentCount - 1);
+    }
+
+    public static long[] installments(long principalMinorUnits, long rateUnits, int installmentCount) {
+        if (installmentCount <= 0) {
+            throw new IllegalArgumentException("Installment count must be positive: " + installmentCount);
+        }
+        long[] amounts = new long[installmentCount];
+        Arrays.fill(amounts, 0, installmentCount - 1, installmentAmount(principalMinorUnits, rateUnits, installmentCount));
+        amounts[installmentCount - 1] = lastInstallmentAmount(principalMinorUnits, rateUnits, installmentCount);
+        return amounts;
+    }
+
+    //positive divisors only
+    public static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (Math.abs(remainder) * 2 >= divisor) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
+
+    //values with at most the given decimals are read through a scale 0 BigDecimal that the JIT can scalar replace,
+    //setScale would keep it from being inlined. Only values with more decimals are rounded
+    private static long toUnits(BigDecimal value, int scale, RoundingMode roundingMode) {
+        int valueScale = value.scale();
+        if (valueScale == 0) {
+            return Math.multiplyExact(value.longValueExact(), POWERS_OF_TEN[scale]);
+        }
+        if (valueScale > 0 && valueScale <= scale) {
+            return Math.multiplyExact(value.movePointRight(valueScale).longValueExact(), POWERS_OF_TEN[scale - valueScale]);
+        }
+        return value.setScale(scale, roundingMode).movePointRight(scale).longValueExact();
+    }
+
+    private static long totalWithInterestInRateUnits(long principalMinorUnits, long rateUnits) {
+        return Math.multiplyExact(principalMinorUnits, Math.addExact(RATE_ONE, rateUnits));
+    }
+}
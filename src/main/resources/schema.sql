@@ -1,8 +1,13 @@
+CREATE SEQUENCE IF NOT EXISTS customer_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS loan_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS loan_installment_seq START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS customer
 (
-    id                BIGINT         NOT NULL AUTO_INCREMENT,
+    id                BIGINT         NOT NULL,
     idate             TIMESTAMP      NOT NULL,
     udate             TIMESTAMP DEFAULT NULL,
+    version           BIGINT    DEFAULT 0 NOT NULL,
     name              VARCHAR(50)    NOT NULL,
     surname           VARCHAR(50)    NOT NULL,
     credit_limit      DECIMAL(15, 2) NOT NULL,
@@ -12,33 +17,95 @@ CREATE TABLE IF NOT EXISTS customer
 
 CREATE TABLE IF NOT EXISTS loan
 (
-    id                    BIGINT         NOT NULL AUTO_INCREMENT,
-    idate                 TIMESTAMP      NOT NULL,
-    udate                 TIMESTAMP DEFAULT NULL,
-    customer_id           BIGINT         NOT NULL,
-    loan_amount           DECIMAL(15, 2) NOT NULL,
-    number_of_installment SMALLINT       NOT NULL,
-    is_paid               BOOLEAN        NOT NULL,
-    interest_rate         DECIMAL(15, 2) NOT NULL,
-    PRIMARY KEY (id),
-    FOREIGN KEY (customer_id) REFERENCES customer (id)
+    id                      BIGINT         NOT NULL,
+    idate                   TIMESTAMP      NOT NULL,
+    udate                   TIMESTAMP      DEFAULT NULL,
+    version                 BIGINT         DEFAULT 0 NOT NULL,
+    customer_id             BIGINT         NOT NULL,
+    loan_amount             DECIMAL(15, 2) NOT NULL,
+    number_of_installment   SMALLINT       NOT NULL,
+    is_paid                 BOOLEAN        NOT NULL,
+    interest_rate           DECIMAL(15, 2) NOT NULL,
+    -- running summary of the installments, so payments and listings are answered from the loan row
+    paid_installment_count  SMALLINT       NOT NULL,
+    remaining_amount        DECIMAL(15, 2) NOT NULL,
+    next_due_date           DATE           DEFAULT NULL,
+    next_installment_amount DECIMAL(15, 2) DEFAULT NULL,
+    PRIMARY KEY (id)
 );
 
+-- LoanSpecification always filters by customer_id, is_paid and number_of_installment are the optional filters.
+-- The foreign key is added after the index, so the index comes first when the planner weighs them equally
+CREATE INDEX IF NOT EXISTS idx_loan_customer_paid_installment ON loan (customer_id, is_paid, number_of_installment);
+ALTER TABLE loan ADD CONSTRAINT IF NOT EXISTS fk_loan_customer FOREIGN KEY (customer_id) REFERENCES customer (id);
+
 CREATE TABLE IF NOT EXISTS loan_installment
 (
-    id           BIGINT         NOT NULL AUTO_INCREMENT,
+    id           BIGINT         NOT NULL,
     idate        TIMESTAMP      NOT NULL,
     udate        TIMESTAMP DEFAULT NULL,
+    version      BIGINT    DEFAULT 0 NOT NULL,
     loan_id      BIGINT         NOT NULL,
     amount       DECIMAL(15, 2) NOT NULL,
     paid_amount  DECIMAL(15, 2) NOT NULL,
     due_date     DATE           NOT NULL,
     payment_date TIMESTAMP DEFAULT NULL,
     is_paid      BOOLEAN        NOT NULL,
-    PRIMARY KEY (id),
-    FOREIGN KEY (loan_id) REFERENCES loan (id)
+    PRIMARY KEY (id)
+);
+
+-- unpaid installments of a loan in due date order for payments
+CREATE INDEX IF NOT EXISTS idx_loan_installment_loan_paid_due_date ON loan_installment (loan_id, is_paid, due_date);
+ALTER TABLE loan_installment ADD CONSTRAINT IF NOT EXISTS fk_loan_installment_loan FOREIGN KEY (loan_id) REFERENCES loan (id);
+
+-- responses of write requests by the Idempotency-Key header of the client, kept until purged by IdempotencyKeyPurgeJob.
+-- The key is prefixed with the name of the authenticated caller, caller:key
+CREATE TABLE IF NOT EXISTS idempotency_key
+(
+    idempotency_key VARCHAR(200)  NOT NULL,
+    idate           TIMESTAMP     NOT NULL,
+    udate           TIMESTAMP DEFAULT NULL,
+    version         BIGINT    DEFAULT 0 NOT NULL,
+    operation       VARCHAR(30)   NOT NULL,
+    request_hash    VARCHAR(64)   NOT NULL,
+    is_completed    BOOLEAN       NOT NULL,
+    response_body   VARCHAR(4000) DEFAULT NULL,
+    PRIMARY KEY (idempotency_key)
 );
 
+CREATE INDEX IF NOT EXISTS idx_idempotency_key_idate ON idempotency_key (idate);
+
+-- append-only log of the payments taken while credit.loan.payment-ledger.enabled is set, PaymentLedgerProjector
+-- applies them to the loan, installment and customer rows and stamps projection_date. An entry carries the summary
+-- of the loan after the payment, so the next payment continues from the latest entry of the loan
+CREATE TABLE IF NOT EXISTS payment_ledger
+(
+    id                      BIGINT         NOT NULL AUTO_INCREMENT,
+    idate                   TIMESTAMP      NOT NULL,
+    udate                   TIMESTAMP      DEFAULT NULL,
+    version                 BIGINT         DEFAULT 0 NOT NULL,
+    loan_id                 BIGINT         NOT NULL,
+    customer_id             BIGINT         NOT NULL,
+    first_installment       SMALLINT       NOT NULL,
+    installment_count       SMALLINT       NOT NULL,
+    paid_amount             DECIMAL(15, 2) NOT NULL,
+    last_due_date           DATE           NOT NULL,
+    remaining_amount        DECIMAL(15, 2) NOT NULL,
+    next_due_date           DATE           DEFAULT NULL,
+    next_installment_amount DECIMAL(15, 2) DEFAULT NULL,
+    is_loan_paid            BOOLEAN        NOT NULL,
+    projection_date         TIMESTAMP      DEFAULT NULL,
+    -- set instead of the projection date when the entries of the loan could not be applied
+    projection_error        VARCHAR(1000)  DEFAULT NULL,
+    PRIMARY KEY (id)
+);
+
+-- two payments continuing from the same state of a loan pay the same first installment, the second insert fails
+CREATE UNIQUE INDEX IF NOT EXISTS uk_payment_ledger_loan_first_installment ON payment_ledger (loan_id, first_installment);
+CREATE INDEX IF NOT EXISTS idx_payment_ledger_projection_date ON payment_ledger (projection_date, id);
+-- read-your-writes of a customer looks for its unprojected entries only
+CREATE INDEX IF NOT EXISTS idx_payment_ledger_projection_date_customer ON payment_ledger (projection_date, customer_id);
+
 CREATE TABLE IF NOT EXISTS hotel
 (
     id           BIGINT      NOT NULL AUTO_INCREMENT,
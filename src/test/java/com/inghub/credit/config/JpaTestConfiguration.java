@@ -0,0 +1,14 @@
+package com.inghub.credit.config;
+
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+@Configuration
+@EnableJpaAuditing
+@EntityScan("com.inghub.credit.domain")
+@EnableJpaRepositories("com.inghub.credit.repository")
+public class JpaTestConfiguration {
+
+}
@@ -0,0 +1,44 @@
+package com.inghub.credit.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records every SQL statement Hibernate prepares. Register it with
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector to assert statement counts in tests.
+ * Sequence calls are ignored because pooled sequences only hit the database once per allocation block.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    public static final String PROPERTY = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.inghub.credit.config.SqlStatementCounter";
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        String statement = sql.trim().toLowerCase(Locale.ROOT);
+        if (!statement.startsWith("select next value for")) {
+            STATEMENTS.add(statement);
+        }
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    public static List<String> getStatements() {
+        return List.copyOf(STATEMENTS);
+    }
+
+    public static long count(String statementPrefix) {
+        return STATEMENTS.stream().filter(statement -> statement.startsWith(statementPrefix)).count();
+    }
+
+    public static int total() {
+        return STATEMENTS.size();
+    }
+}
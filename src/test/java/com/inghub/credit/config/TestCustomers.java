@@ -0,0 +1,22 @@
+package com.inghub.credit.config;
+
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.repository.CustomerRepository;
+
+import java.math.BigDecimal;
+
+//customers saved by the tests and benchmarks that run against the database
+public final class TestCustomers {
+
+    private TestCustomers() {
+    }
+
+    public static Customer save(CustomerRepository customerRepository, BigDecimal creditLimit) {
+        Customer customer = new Customer();
+        customer.setName("test");
+        customer.setSurname("customer");
+        customer.setCreditLimit(creditLimit);
+        customer.setUsedCreditLimit(BigDecimal.ZERO);
+        return customerRepository.save(customer);
+    }
+}
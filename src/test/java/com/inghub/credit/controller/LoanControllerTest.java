@@ -0,0 +1,94 @@
+package com.inghub.credit.controller;
+
+import com.inghub.credit.service.IdempotencyService;
+import com.inghub.credit.service.LoanBatchService;
+import com.inghub.credit.service.LoanExportService;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentLocks;
+import com.inghub.credit.service.LoanPaymentService;
+import com.inghub.credit.service.LoanService;
+import com.inghub.credit.service.PaymentLedgerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class LoanControllerTest {
+
+    private static final String EXPORT_BODY = "{\"type\":\"loan\",\"id\":1}\n{\"type\":\"installment\",\"id\":1}\n";
+
+    @Mock
+    private LoanService loanService;
+
+    @Mock
+    private LoanBatchService loanBatchService;
+
+    @Mock
+    private LoanExportService loanExportService;
+
+    @Mock
+    private LoanInstallmentService loanInstallmentService;
+
+    @Mock
+    private LoanPaymentService loanPaymentService;
+
+    @Mock
+    private LoanPaymentLocks loanPaymentLocks;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private PaymentLedgerService paymentLedgerService;
+
+    @InjectMocks
+    private LoanController loanController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(loanController, "exportTimeout", Duration.ofSeconds(42));
+        mockMvc = MockMvcBuilders.standaloneSetup(loanController).build();
+    }
+
+    @Test
+    void exportLoansOfCustomer_StreamsNdjsonAsAsyncRequestWithExportTimeout() throws Exception {
+        when(loanExportService.exportLoansByCustomerId(eq(1L), any(OutputStream.class))).thenAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write(EXPORT_BODY.getBytes(StandardCharsets.UTF_8));
+            return 2L;
+        });
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/loans/export").param("customerId", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //the export timeout replaces the default async request timeout
+        assertEquals(Duration.ofSeconds(42).toMillis(), mvcResult.getRequest().getAsyncContext().getTimeout());
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(EXPORT_BODY));
+    }
+}
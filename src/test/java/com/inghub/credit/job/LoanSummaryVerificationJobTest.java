@@ -0,0 +1,105 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.service.CustomerCache;
+import com.inghub.credit.service.CustomerService;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentService;
+import com.inghub.credit.service.LoanService;
+import com.inghub.credit.service.PaymentLedgerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@Import({LoanSummaryVerificationJob.class, LoanPaymentService.class, PaymentLedgerService.class, LoanService.class, LoanInstallmentService.class, CustomerService.class,
+        CustomerCache.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanSummaryVerificationJobTest {
+
+    @Autowired
+    private LoanSummaryVerificationJob loanSummaryVerificationJob;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanPaymentService loanPaymentService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void run_SummariesKeptByPayments_ReportsNoMismatch() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan unpaidLoan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        Loan partiallyPaidLoan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        loanPaymentService.payLoan(partiallyPaidLoan.getId(), new BigDecimal("400.00"));
+
+        LoanSummaryVerificationResult result = loanSummaryVerificationJob.run();
+
+        assertTrue(result.checkedLoanCount() >= 2);
+        assertFalse(result.mismatchedLoanIds().contains(unpaidLoan.getId()));
+        assertFalse(result.mismatchedLoanIds().contains(partiallyPaidLoan.getId()));
+    }
+
+    @Test
+    void run_LoanPaidTwiceInOneTransaction_ReportsNoMismatch() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+
+        //the second payment reads the loan from the persistence context of the first one, like a payment file batch
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            loanPaymentService.payLoan(loan.getId(), new BigDecimal("200.00"));
+            loanPaymentService.payLoan(loan.getId(), new BigDecimal("200.00"));
+        });
+
+        assertEquals(2, loanService.findById(loan.getId()).getPaidInstallmentCount());
+        assertEquals(2, jdbcTemplate.queryForObject("select count(*) from loan_installment where loan_id = ? and is_paid", Integer.class, loan.getId()));
+        assertFalse(loanSummaryVerificationJob.run().mismatchedLoanIds().contains(loan.getId()));
+    }
+
+    @Test
+    void run_SummaryChangedOutsideThePaymentPath_ReportsTheLoan() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        double mismatchesBefore = meterRegistry.counter("credit.loan.summary.mismatches").count();
+        jdbcTemplate.update("update loan set remaining_amount = remaining_amount - 0.01 where id = ?", loan.getId());
+
+        try {
+            LoanSummaryVerificationResult result = loanSummaryVerificationJob.run();
+
+            assertTrue(result.mismatchedLoanIds().contains(loan.getId()));
+            assertEquals(result.mismatchedLoanCount(), meterRegistry.counter("credit.loan.summary.mismatches").count() - mismatchesBefore);
+        } finally {
+            jdbcTemplate.update("update loan set remaining_amount = remaining_amount + 0.01 where id = ?", loan.getId());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.model.PayLoanResponse;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import com.inghub.credit.service.CustomerCache;
+import com.inghub.credit.service.CustomerService;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentService;
+import com.inghub.credit.service.LoanService;
+import com.inghub.credit.service.PaymentLedgerService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {"credit.payment-file.workers=2", "credit.payment-file.batch-size=3", "credit.payment-file.queue-capacity=4"})
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@Import({PaymentFileJob.class, LoanPaymentService.class, PaymentLedgerService.class, LoanService.class, LoanInstallmentService.class, CustomerService.class, CustomerCache.class, ConflictRetryTemplate.class,
+        SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentFileJobTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Autowired
+    private PaymentFileJob paymentFileJob;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void run_MixedCsvAndNdjsonFile_PaysLoansInFileOrderAndReportsFailures() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan firstLoan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        Loan secondLoan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+
+        Path inputFile = tempDir.resolve("payments.csv");
+        Files.write(inputFile, List.of(
+                "loanId,paidAmount",
+                firstLoan.getId() + ",200.00",
+                secondLoan.getId() + ",200.00",
+                "not-a-loan,200.00",
+                "",
+                "{\"loanId\":" + firstLoan.getId() + ",\"paidAmount\":200.00}",
+                "-1,200.00",
+                // less than one installment, rolls back its batch which is then paid record by record
+                secondLoan.getId() + ",100.00"));
+        Path resultFile = tempDir.resolve("payments.results.csv");
+
+        PaymentFileJobResult result = paymentFileJob.run(inputFile, resultFile);
+
+        assertEquals(6, result.recordCount());
+        assertEquals(3, result.successCount());
+        assertEquals(3, result.failureCount());
+        assertTrue(result.p99LatencyMillis() >= result.p50LatencyMillis());
+        assertTrue(result.maxLatencyMillis() >= result.p99LatencyMillis());
+
+        List<String> lines = Files.readAllLines(resultFile);
+        assertEquals(PaymentResultWriter.HEADER, lines.get(0));
+        Map<String, String> resultsByLine = lines.stream().skip(1).collect(Collectors.toMap(line -> line.substring(0, line.indexOf(',')), Function.identity()));
+        assertEquals(Map.of("2", "PAID", "3", "PAID", "4", "FAILED", "6", "PAID", "7", "FAILED", "8", "FAILED"),
+                     resultsByLine.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().split(",")[3])));
+        assertTrue(resultsByLine.get("2").contains(",PAID,1,"));
+        assertTrue(resultsByLine.get("8").endsWith("\"No installments are eligible for payment for loanId: " + secondLoan.getId() + "\""));
+
+        assertEquals(2, countPaidInstallments(firstLoan.getId()));
+        assertEquals(1, countPaidInstallments(secondLoan.getId()));
+    }
+
+    @Test
+    void run_WorkerFails_ThrowsIllegalStateExceptionInsteadOfWaitingForItsQueue() throws Exception {
+        LoanPaymentService failingPaymentService = mock(LoanPaymentService.class);
+        when(failingPaymentService.payLoan(any(), any())).thenThrow(new AssertionError("worker died"));
+        PaymentFileJob failingJob = new PaymentFileJob(failingPaymentService, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                                                       new ConflictRetryTemplate(new SimpleMeterRegistry(), 3, Duration.ofMillis(1), Duration.ofMillis(4)));
+        ReflectionTestUtils.setField(failingJob, "workerCount", 1);
+        ReflectionTestUtils.setField(failingJob, "batchSize", 1);
+        ReflectionTestUtils.setField(failingJob, "queueCapacity", 1);
+
+        //far more records than the queue holds, so the reader waits for the dead worker
+        Path inputFile = tempDir.resolve("failing-payments.csv");
+        Files.write(inputFile, IntStream.rangeClosed(1, 100).mapToObj(loanId -> loanId + ",200.00").toList());
+
+        IllegalStateException exception = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, () -> failingJob.run(inputFile, tempDir.resolve("failing-payments.results.csv"))));
+
+        assertEquals("worker died", exception.getCause().getMessage());
+    }
+
+    @Test
+    void run_BatchFailsOnConcurrentUpdate_RetriesTheBatchTransaction() throws Exception {
+        LoanPaymentService conflictingPaymentService = mock(LoanPaymentService.class);
+        when(conflictingPaymentService.payLoan(any(), any()))
+                .thenThrow(new OptimisticLockingFailureException("loan updated concurrently"))
+                .thenReturn(new PayLoanResponse(1L, 1, 200.0, false));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PaymentFileJob conflictingJob = new PaymentFileJob(conflictingPaymentService, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                                                           new ConflictRetryTemplate(meterRegistry, 3, Duration.ofMillis(1), Duration.ofMillis(4)));
+        ReflectionTestUtils.setField(conflictingJob, "workerCount", 1);
+        ReflectionTestUtils.setField(conflictingJob, "batchSize", 1);
+        ReflectionTestUtils.setField(conflictingJob, "queueCapacity", 1);
+
+        Path inputFile = tempDir.resolve("conflicting-payments.csv");
+        Files.write(inputFile, List.of("1,200.00"));
+
+        PaymentFileJobResult result = conflictingJob.run(inputFile, tempDir.resolve("conflicting-payments.results.csv"));
+
+        assertEquals(1, result.successCount());
+        assertEquals(1, meterRegistry.get("credit.retry.conflicts").tags("operation", "PaymentFileJob.payBatch", "result", "recovered").counter().count());
+    }
+
+    private int countPaidInstallments(Long loanId) {
+        return jdbcTemplate.queryForObject("select count(*) from loan_installment where loan_id = ? and is_paid = true", Integer.class, loanId);
+    }
+}
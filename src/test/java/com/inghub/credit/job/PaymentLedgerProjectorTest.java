@@ -0,0 +1,210 @@
+package com.inghub.credit.job;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.exception.CreditException;
+import com.inghub.credit.exception.ResourceNotFoundException;
+import com.inghub.credit.model.PayLoanResponse;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.repository.LoanRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import com.inghub.credit.retry.RetryOnConflictAspect;
+import com.inghub.credit.service.CustomerCache;
+import com.inghub.credit.service.CustomerService;
+import com.inghub.credit.service.LoanInstallmentService;
+import com.inghub.credit.service.LoanPaymentService;
+import com.inghub.credit.service.LoanService;
+import com.inghub.credit.service.PaymentLedgerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"credit.loan.payment-ledger.enabled=true", "credit.loan.payment-ledger.wait-timeout=2s"})
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(AopAutoConfiguration.class)
+@Import({PaymentLedgerProjector.class, PaymentLedgerService.class, LoanPaymentService.class, LoanService.class, LoanInstallmentService.class,
+        CustomerService.class, CustomerCache.class, ConflictRetryTemplate.class, RetryOnConflictAspect.class, LoanSummaryVerificationJob.class,
+        SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentLedgerProjectorTest {
+
+    // 1200.00 at 0.10 in 12 installments of 110.00
+    private static final BigDecimal INSTALLMENT_AMOUNT = new BigDecimal("110.00");
+
+    @Autowired
+    private PaymentLedgerProjector paymentLedgerProjector;
+
+    @Autowired
+    private PaymentLedgerService paymentLedgerService;
+
+    @Autowired
+    private LoanPaymentService loanPaymentService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanSummaryVerificationJob loanSummaryVerificationJob;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void payLoan_LedgerMode_AppendsPaymentsThatTheProjectorApplies() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = savePayableLoan(customer);
+
+        PayLoanResponse first = loanPaymentService.payLoan(loan.getId(), new BigDecimal("220.00"));
+        PayLoanResponse second = loanPaymentService.payLoan(loan.getId(), INSTALLMENT_AMOUNT);
+
+        //the second payment continues from the ledger, the rows are not changed yet
+        assertEquals(2, first.paidInstallmentCount());
+        assertEquals(1, second.paidInstallmentCount());
+        assertEquals(0, loanRepository.findById(loan.getId()).orElseThrow().getPaidInstallmentCount());
+        assertEquals(0, paidInstallmentCount(loan));
+        assertEquals(0, new BigDecimal("1200.00").compareTo(usedCreditLimit(customer)));
+        assertEquals(3, jdbcTemplate.queryForObject("select max(first_installment) from payment_ledger where loan_id = ?", Integer.class, loan.getId()));
+
+        assertEquals(2, paymentLedgerProjector.run());
+
+        Loan projectedLoan = loanRepository.findById(loan.getId()).orElseThrow();
+        assertEquals(3, projectedLoan.getPaidInstallmentCount());
+        assertEquals(0, new BigDecimal("990.00").compareTo(projectedLoan.getRemainingAmount()));
+        assertEquals(3, paidInstallmentCount(loan));
+        assertEquals(0, new BigDecimal("870.00").compareTo(usedCreditLimit(customer)));
+        assertFalse(loanSummaryVerificationJob.run().mismatchedLoanIds().contains(loan.getId()));
+        assertEquals(0, paymentLedgerProjector.run());
+    }
+
+    @Test
+    void payLoan_LoanPaidInLedger_ThrowsResourceNotFoundExceptionBeforeProjection() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = savePayableLoan(customer);
+
+        PayLoanResponse response = loanPaymentService.payLoan(loan.getId(), new BigDecimal("1320.00"));
+
+        assertTrue(response.loanPaidCompletely());
+        assertThrows(ResourceNotFoundException.class, () -> loanPaymentService.payLoan(loan.getId(), INSTALLMENT_AMOUNT));
+
+        paymentLedgerProjector.run();
+        assertTrue(loanRepository.findById(loan.getId()).orElseThrow().isPaid());
+        // 1200.00 reserved and 1320.00 paid back
+        assertEquals(0, new BigDecimal("-120.00").compareTo(usedCreditLimit(customer)));
+    }
+
+    @Test
+    void appendPayment_FromSummaryPaidByAnotherPayment_ThrowsOptimisticLockingFailureException() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = savePayableLoan(customer);
+        Loan readLoan = loanService.findById(loan.getId());
+        paymentLedgerService.appendPayment(readLoan, 1, INSTALLMENT_AMOUNT);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> paymentLedgerService.appendPayment(readLoan, 1, INSTALLMENT_AMOUNT));
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from payment_ledger where loan_id = ?", Integer.class, loan.getId()));
+        paymentLedgerProjector.run();
+    }
+
+    @Test
+    void awaitLoanPayments_ProjectorRunsWhileWaiting_ReturnsAfterProjection() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = savePayableLoan(customer);
+        loanPaymentService.payLoan(loan.getId(), INSTALLMENT_AMOUNT);
+
+        CompletableFuture<Integer> projection = CompletableFuture.supplyAsync(() -> {
+            sleep(200);
+            return paymentLedgerProjector.run();
+        });
+        paymentLedgerService.awaitLoanPayments(loan.getId());
+        paymentLedgerService.awaitCustomerPayments(customer.getId());
+
+        assertEquals(1, paidInstallmentCount(loan));
+        assertTrue(projection.get(5, TimeUnit.SECONDS) >= 1);
+    }
+
+    @Test
+    void awaitLoanPayments_ProjectorNotRunning_ThrowsCreditException() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan loan = savePayableLoan(customer);
+        loanPaymentService.payLoan(loan.getId(), INSTALLMENT_AMOUNT);
+
+        CreditException exception = assertThrows(CreditException.class, () -> paymentLedgerService.awaitLoanPayments(loan.getId()));
+
+        assertEquals("Payments of loan " + loan.getId() + " are not applied yet, please retry", exception.getMessage());
+        paymentLedgerProjector.run();
+    }
+
+    @Test
+    void run_EntryThatAlwaysFails_LeavesItsLoanOutAndProjectsTheOtherLoans() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan brokenLoan = savePayableLoan(customer);
+        Loan loan = savePayableLoan(customer);
+        loanPaymentService.payLoan(brokenLoan.getId(), INSTALLMENT_AMOUNT);
+        loanPaymentService.payLoan(loan.getId(), INSTALLMENT_AMOUNT);
+        //the used credit limit of the entry can never be decreased
+        jdbcTemplate.update("update payment_ledger set customer_id = -1 where loan_id = ?", brokenLoan.getId());
+        double failedBefore = meterRegistry.counter("credit.loan.payment.ledger.failed").count();
+
+        assertEquals(1, paymentLedgerProjector.run());
+
+        assertEquals(1, paidInstallmentCount(loan));
+        assertEquals(0, paidInstallmentCount(brokenLoan));
+        assertEquals(1, meterRegistry.counter("credit.loan.payment.ledger.failed").count() - failedBefore);
+        String projectionError = jdbcTemplate.queryForObject("select projection_error from payment_ledger where loan_id = ?", String.class, brokenLoan.getId());
+        assertTrue(projectionError.startsWith("ResourceNotFoundException: "), projectionError);
+        CreditException exception = assertThrows(CreditException.class, () -> loanPaymentService.payLoan(brokenLoan.getId(), INSTALLMENT_AMOUNT));
+        assertEquals("Payments of loan " + brokenLoan.getId() + " could not be applied, the loan cannot be paid until they are", exception.getMessage());
+        assertEquals(0, paymentLedgerProjector.run());
+    }
+
+    // moved a year back so every installment is payable
+    private Loan savePayableLoan(Customer customer) {
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1200.00"), 12, new BigDecimal("0.10"));
+        jdbcTemplate.update("update loan_installment set due_date = dateadd(month, -12, due_date) where loan_id = ?", loan.getId());
+        jdbcTemplate.update("update loan set next_due_date = dateadd(month, -12, next_due_date) where id = ?", loan.getId());
+        return loan;
+    }
+
+    private int paidInstallmentCount(Loan loan) {
+        return jdbcTemplate.queryForObject("select count(*) from loan_installment where loan_id = ? and is_paid", Integer.class, loan.getId());
+    }
+
+    private BigDecimal usedCreditLimit(Customer customer) {
+        return customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit();
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.inghub.credit.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSummaryFilterTest {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+    private final Logger serviceLogger = loggerContext.getLogger("com.inghub.credit.service.LoanService");
+    private final Logger otherLogger = loggerContext.getLogger("org.springframework.web");
+    private DebugSamplingTurboFilter turboFilter;
+
+    @BeforeEach
+    void setUp() {
+        turboFilter = new DebugSamplingTurboFilter();
+        turboFilter.addLogger("com.inghub.credit");
+        turboFilter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void doFilter_SampledRequest_AcceptsDebugOfConfiguredLoggersDuringRequest() throws Exception {
+        AtomicReference<FilterReply> serviceDebugReply = new AtomicReference<>();
+        AtomicReference<FilterReply> otherDebugReply = new AtomicReference<>();
+        AtomicReference<FilterReply> serviceInfoReply = new AtomicReference<>();
+
+        new RequestSummaryFilter(1.0).doFilter(new MockHttpServletRequest("GET", "/api/v1/loans"), new MockHttpServletResponse(), (request, response) -> {
+            serviceDebugReply.set(turboFilter.decide(null, serviceLogger, Level.DEBUG, "debug", null, null));
+            otherDebugReply.set(turboFilter.decide(null, otherLogger, Level.DEBUG, "debug", null, null));
+            serviceInfoReply.set(turboFilter.decide(null, serviceLogger, Level.INFO, "info", null, null));
+        });
+
+        assertEquals(FilterReply.ACCEPT, serviceDebugReply.get());
+        assertEquals(FilterReply.NEUTRAL, otherDebugReply.get());
+        assertEquals(FilterReply.NEUTRAL, serviceInfoReply.get());
+        //the next request on this thread must not inherit the sampling decision
+        assertNull(MDC.get(RequestSummaryFilter.SAMPLED_MDC_KEY));
+        assertEquals(FilterReply.NEUTRAL, turboFilter.decide(null, serviceLogger, Level.DEBUG, "debug", null, null));
+    }
+
+    @Test
+    void doFilter_SampleRateZero_LeavesDebugToLoggerLevels() throws Exception {
+        AtomicReference<FilterReply> serviceDebugReply = new AtomicReference<>();
+
+        new RequestSummaryFilter(0).doFilter(new MockHttpServletRequest("GET", "/api/v1/loans"), new MockHttpServletResponse(), (request, response) ->
+                serviceDebugReply.set(turboFilter.decide(null, serviceLogger, Level.DEBUG, "debug", null, null)));
+
+        assertEquals(FilterReply.NEUTRAL, serviceDebugReply.get());
+    }
+}
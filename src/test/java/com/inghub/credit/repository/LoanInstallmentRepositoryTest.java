@@ -0,0 +1,50 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.domain.LoanInstallment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+class LoanInstallmentRepositoryTest {
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void markInstallmentsAsPaidDueUntil_UpdatesOnlyUnpaidInstallmentsInOneStatement() {
+        LocalDateTime paymentDate = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+        // seed installments of loan 1 are due on the first of each month from 2025-02-01
+        int firstUpdate = loanInstallmentRepository.markInstallmentsAsPaidDueUntil(1L, LocalDate.of(2025, 3, 1), paymentDate);
+        int secondUpdate = loanInstallmentRepository.markInstallmentsAsPaidDueUntil(1L, LocalDate.of(2025, 4, 1), paymentDate);
+        testEntityManager.clear();
+
+        assertEquals(2, firstUpdate);
+        assertEquals(1, secondUpdate);
+
+        LoanInstallment installment = loanInstallmentRepository.findById(2L).orElseThrow();
+        assertTrue(installment.isPaid());
+        assertEquals(0, installment.getAmount().compareTo(installment.getPaidAmount()));
+        assertEquals(paymentDate, installment.getPaymentDate());
+        assertEquals(paymentDate, installment.getUpdateDate());
+        assertEquals(3, jdbcTemplate.queryForObject("select count(*) from loan_installment where loan_id = ? and is_paid = false", Integer.class, 1L));
+    }
+}
@@ -0,0 +1,228 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.model.dto.LoanDTO;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.model.dto.LoanInstallmentExportRow;
+import com.inghub.credit.repository.page.PageRequestBuilder;
+import com.inghub.credit.repository.spec.LoanInstallmentSpecification;
+import com.inghub.credit.repository.spec.LoanSpecification;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs H2 EXPLAIN for the SQL generated by the repository queries and fails when a table is scanned,
+ * so a dropped index or a query change that stops using one shows up before it ships.
+ */
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+class QueryPlanTest {
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PaymentLedgerRepository paymentLedgerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @BeforeEach
+    void setUp() {
+        testEntityManager.clear();
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void loanSpecification_ByCustomerId_UsesIndex() {
+        loanRepository.findAll(LoanSpecification.getSpecificationForLoan(1L, null, null, null),
+                               PageRequestBuilder.getPageRequest(20, 1, "-loanAmount"));
+
+        assertNoTableScan("select");
+    }
+
+    @Test
+    void loanSpecification_ByAllFilters_UsesCustomerIndex() {
+        loanRepository.findAll(LoanSpecification.getSpecificationForLoan(1L, new BigDecimal("1000.00"), 6, false),
+                               PageRequestBuilder.getPageRequest(20, 1, "+numberOfInstallment"));
+
+        assertAllSelectsUseIndex("IDX_LOAN_CUSTOMER_PAID_INSTALLMENT");
+    }
+
+    @Test
+    void loanSpecification_KeysetScroll_UsesCustomerIndex() {
+        loanRepository.findBy(LoanSpecification.getSpecificationForLoan(1L, null, null, false),
+                              query -> query.sortBy(PageRequestBuilder.getKeysetSort("-loanAmount")).limit(20).scroll(ScrollPosition.keyset()));
+
+        assertAllSelectsUseIndex("IDX_LOAN_CUSTOMER_PAID_INSTALLMENT");
+    }
+
+    @Test
+    void findLoanDTOs_ByCustomerId_UsesCustomerIndexWithoutCustomerJoin() {
+        loanRepository.findLoanDTOs(LoanSpecification.getSpecificationForLoan(1L, null, null, false),
+                                    PageRequestBuilder.getPageRequest(20, 1, "-loanAmount"));
+
+        assertAllSelectsUseIndex("IDX_LOAN_CUSTOMER_PAID_INSTALLMENT");
+        assertTrue(SqlStatementCounter.getStatements().stream().noneMatch(statement -> statement.contains("join")));
+    }
+
+    @Test
+    void scrollLoanDTOs_Keyset_UsesCustomerIndex() {
+        Sort keysetSort = PageRequestBuilder.getKeysetSort("-loanAmount");
+        Window<LoanDTO> firstWindow = loanRepository.scrollLoanDTOs(LoanSpecification.getSpecificationForLoan(1L, null, null, false),
+                                                                    keysetSort, 1, ScrollPosition.keyset());
+        loanRepository.scrollLoanDTOs(LoanSpecification.getSpecificationForLoan(1L, null, null, false),
+                                      keysetSort, 1, firstWindow.positionAt(firstWindow.size() - 1));
+
+        assertAllSelectsUseIndex("IDX_LOAN_CUSTOMER_PAID_INSTALLMENT");
+    }
+
+    @Test
+    void findDTOsByLoanId_Page_UsesIndex() {
+        loanInstallmentRepository.findDTOsByLoanId(1L, PageRequestBuilder.getPageRequest(2, 1, "+dueDate"));
+        loanInstallmentRepository.findDTOSliceByLoanId(1L, PageRequestBuilder.getPageRequest(2, 2, "+dueDate"));
+
+        assertNoTableScan("select");
+    }
+
+    @Test
+    void scrollLoanInstallmentDTOs_Keyset_UsesIndex() {
+        Sort keysetSort = PageRequestBuilder.getKeysetSort("+dueDate");
+        Window<LoanInstallmentDTO> firstWindow = loanInstallmentRepository.scrollLoanInstallmentDTOs(LoanInstallmentSpecification.getSpecificationForLoanId(1L),
+                                                                                                     keysetSort, 2, ScrollPosition.keyset());
+        loanInstallmentRepository.scrollLoanInstallmentDTOs(LoanInstallmentSpecification.getSpecificationForLoanId(1L),
+                                                            keysetSort, 2, firstWindow.positionAt(firstWindow.size() - 1));
+
+        assertNoTableScan("select");
+    }
+
+    @Test
+    void loanInstallmentSpecification_KeysetScroll_UsesIndex() {
+        Sort keysetSort = PageRequestBuilder.getKeysetSort("+dueDate");
+        Window<LoanInstallment> firstWindow = loanInstallmentRepository.findBy(LoanInstallmentSpecification.getSpecificationForLoanId(1L),
+                                                                               query -> query.sortBy(keysetSort).limit(2).scroll(ScrollPosition.keyset()));
+        loanInstallmentRepository.findBy(LoanInstallmentSpecification.getSpecificationForLoanId(1L),
+                                         query -> query.sortBy(keysetSort).limit(2).scroll(firstWindow.positionAt(firstWindow.size() - 1)));
+
+        assertNoTableScan("select");
+    }
+
+    @Test
+    void streamExportRowsByCustomerId_UsesIndexes() {
+        try (Stream<LoanInstallmentExportRow> rows = loanInstallmentRepository.streamExportRowsByCustomerId(1L)) {
+            assertTrue(rows.allMatch(row -> row.loanId() != null));
+        }
+
+        assertNoTableScan("select");
+    }
+
+    @Test
+    void markInstallmentsAsPaidDueUntil_UsesLoanPaidDueDateIndex() {
+        loanInstallmentRepository.markInstallmentsAsPaidDueUntil(1L, LocalDate.of(2025, 3, 1), LocalDateTime.now());
+
+        List<String> plans = assertNoTableScan("update");
+        assertTrue(plans.stream().allMatch(plan -> plan.contains("IDX_LOAN_INSTALLMENT_LOAN_PAID_DUE_DATE")), () -> plans.toString());
+    }
+
+    @Test
+    void recordPayment_UsesPrimaryKey() {
+        loanRepository.recordPayment(1L, 0, 1, new BigDecimal("20.00"), LocalDate.of(2025, 3, 1), new BigDecimal("20.00"), false, LocalDateTime.now());
+
+        assertNoTableScan("update");
+    }
+
+    @Test
+    void increaseUsedCreditLimitIfAvailable_UsesPrimaryKey() {
+        customerRepository.increaseUsedCreditLimitIfAvailable(1L, BigDecimal.ONE, LocalDateTime.now());
+        customerRepository.decreaseUsedCreditLimit(1L, BigDecimal.ONE, LocalDateTime.now());
+
+        assertNoTableScan("update");
+    }
+
+    @Test
+    void findUnprojected_UsesProjectionDateIndex() {
+        paymentLedgerRepository.findUnprojected(PageRequest.of(0, 100));
+
+        assertAllSelectsUseIndex("IDX_PAYMENT_LEDGER_PROJECTION_DATE");
+    }
+
+    @Test
+    void existsUnprojectedByLoanId_UsesLoanFirstInstallmentIndex() {
+        paymentLedgerRepository.existsUnprojectedByLoanId(1L);
+
+        assertAllSelectsUseIndex("UK_PAYMENT_LEDGER_LOAN_FIRST_INSTALLMENT");
+    }
+
+    @Test
+    void existsUnprojectedByCustomerId_UsesProjectionDateCustomerIndex() {
+        paymentLedgerRepository.existsUnprojectedByCustomerId(1L);
+
+        assertAllSelectsUseIndex("IDX_PAYMENT_LEDGER_PROJECTION_DATE_CUSTOMER");
+    }
+
+    @Test
+    void findFirstByLoanIdOrderByFirstInstallmentDesc_UsesLoanFirstInstallmentIndex() {
+        paymentLedgerRepository.findFirstByLoanIdOrderByFirstInstallmentDesc(1L);
+
+        assertAllSelectsUseIndex("UK_PAYMENT_LEDGER_LOAN_FIRST_INSTALLMENT");
+    }
+
+    @Test
+    void markProjectedAndMarkFailed_UseIndexes() {
+        paymentLedgerRepository.markProjected(List.of(1L, 2L), LocalDateTime.now());
+        paymentLedgerRepository.markFailed(1L, "failed", LocalDateTime.now());
+
+        assertNoTableScan("update");
+    }
+
+    private void assertAllSelectsUseIndex(String indexName) {
+        List<String> plans = assertNoTableScan("select");
+        for (String plan : plans) {
+            assertTrue(plan.contains(indexName), () -> indexName + " is not used by:\n" + plan);
+        }
+    }
+
+    private List<String> assertNoTableScan(String statementPrefix) {
+        List<String> statements = SqlStatementCounter.getStatements().stream().filter(statement -> statement.startsWith(statementPrefix)).toList();
+        assertFalse(statements.isEmpty(), "No " + statementPrefix + " statement was captured");
+
+        List<String> plans = statements.stream().map(this::explainStatement).toList();
+        for (String plan : plans) {
+            assertFalse(plan.contains("tableScan"), () -> "Table scan in plan:\n" + plan);
+        }
+        return plans;
+    }
+
+    // H2 accepts EXPLAIN with unset parameters, the plan only depends on which columns are bound
+    private String explainStatement(String statement) {
+        return jdbcTemplate.queryForObject("explain " + statement, String.class);
+    }
+}
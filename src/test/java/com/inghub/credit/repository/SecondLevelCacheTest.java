@@ -0,0 +1,85 @@
+package com.inghub.credit.repository;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.repository.page.PageRequestBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ActiveProfiles({"default", "l2cache"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SecondLevelCacheTest {
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private LoanInstallmentRepository loanInstallmentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void findDTOsByLoanId_RepeatedPage_IsServedFromCacheUntilBulkUpdate() {
+        Page<LoanInstallmentDTO> firstRead = findInstallmentsOfLoan(1L);
+        assertTrue(SqlStatementCounter.total() > 0);
+
+        SqlStatementCounter.clear();
+        Page<LoanInstallmentDTO> secondRead = findInstallmentsOfLoan(1L);
+
+        // the page rows and its count come from the query cache
+        assertEquals(0, SqlStatementCounter.total());
+        assertEquals(firstRead.getTotalElements(), secondRead.getTotalElements());
+        assertEquals(firstRead.getContent(), secondRead.getContent());
+
+        LoanInstallmentDTO firstInstallment = secondRead.getContent().get(0);
+        assertFalse(firstInstallment.isPaid());
+        loanInstallmentRepository.markInstallmentsAsPaidDueUntil(1L, firstInstallment.dueDate(), LocalDateTime.now());
+
+        SqlStatementCounter.clear();
+        Page<LoanInstallmentDTO> readAfterPayment = findInstallmentsOfLoan(1L);
+
+        // the bulk update invalidates the cached query results of the table
+        assertTrue(SqlStatementCounter.count("select") > 0);
+        assertTrue(readAfterPayment.getContent().stream().filter(installment -> installment.id().equals(firstInstallment.id())).allMatch(LoanInstallmentDTO::isPaid));
+    }
+
+    @Test
+    void loanInstallments_Collection_IsCachedWithLoan() {
+        int firstSize = transactionTemplate.execute(status -> loanRepository.findById(1L).orElseThrow().getLoanInstallments().size());
+
+        SqlStatementCounter.clear();
+        int secondSize = transactionTemplate.execute(status -> loanRepository.findById(1L).orElseThrow().getLoanInstallments().size());
+
+        assertEquals(firstSize, secondSize);
+        assertEquals(0, SqlStatementCounter.total());
+    }
+
+    private Page<LoanInstallmentDTO> findInstallmentsOfLoan(Long loanId) {
+        return transactionTemplate.execute(status -> loanInstallmentRepository.findDTOsByLoanId(loanId, PageRequestBuilder.getPageRequest(20, 1, "+dueDate")));
+    }
+}
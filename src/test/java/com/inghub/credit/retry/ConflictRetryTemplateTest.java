@@ -0,0 +1,83 @@
+package com.inghub.credit.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflictRetryTemplateTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConflictRetryTemplate conflictRetryTemplate;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        conflictRetryTemplate = new ConflictRetryTemplate(meterRegistry, 3, Duration.ofMillis(1), Duration.ofMillis(4));
+    }
+
+    @Test
+    void execute_ConflictThenSuccess_RetriesAndReturnsResult() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = conflictRetryTemplate.execute("payLoan", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw attempts.get() == 1 ? new OptimisticLockingFailureException("version changed") : new CannotAcquireLockException("lock timeout");
+            }
+            return "paid";
+        });
+
+        assertEquals("paid", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, meterRegistry.counter("credit.retry.conflicts", "operation", "payLoan", "result", "retried").count());
+        assertEquals(1, meterRegistry.counter("credit.retry.conflicts", "operation", "payLoan", "result", "recovered").count());
+    }
+
+    @Test
+    void execute_ConflictOnEveryAttempt_ThrowsAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(OptimisticLockingFailureException.class, () -> conflictRetryTemplate.execute("payLoan", () -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockingFailureException("version changed");
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(1, meterRegistry.counter("credit.retry.conflicts", "operation", "payLoan", "result", "exhausted").count());
+    }
+
+    @Test
+    void execute_OtherException_IsNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalArgumentException.class, () -> conflictRetryTemplate.execute("payLoan", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("Payment amount cannot be negative");
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void execute_InsideTransaction_RunsOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertThrows(OptimisticLockingFailureException.class, () -> conflictRetryTemplate.execute("payLoan", () -> {
+                attempts.incrementAndGet();
+                throw new OptimisticLockingFailureException("version changed");
+            }));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(1, attempts.get());
+    }
+}
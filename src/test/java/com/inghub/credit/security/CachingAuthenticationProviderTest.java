@@ -0,0 +1,81 @@
+package com.inghub.credit.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CachingAuthenticationProviderTest {
+
+    private PasswordEncoder passwordEncoder;
+    private InMemoryUserDetailsManager userDetailsManager;
+    private CachingAuthenticationProvider cachingAuthenticationProvider;
+
+    @BeforeEach
+    void setUp() {
+        passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.matches("12345", "{encoded}12345")).thenReturn(true);
+        when(passwordEncoder.matches("54321", "{encoded}54321")).thenReturn(true);
+
+        userDetailsManager = new InMemoryUserDetailsManager(User.withUsername("user").password("{encoded}12345").roles("ADMIN").build());
+
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider(passwordEncoder);
+        daoAuthenticationProvider.setUserDetailsService(userDetailsManager);
+        cachingAuthenticationProvider = new CachingAuthenticationProvider(daoAuthenticationProvider, userDetailsManager, Duration.ofMinutes(5), 100);
+    }
+
+    @Test
+    void authenticate_SameCredentialsTwice_VerifiesPasswordOnce() {
+        Authentication first = cachingAuthenticationProvider.authenticate(token("user", "12345"));
+        Authentication second = cachingAuthenticationProvider.authenticate(token("user", "12345"));
+
+        assertTrue(first.isAuthenticated());
+        assertTrue(second.isAuthenticated());
+        assertEquals("user", second.getName());
+        assertEquals(first.getAuthorities(), second.getAuthorities());
+        verify(passwordEncoder, times(1)).matches(any(), any());
+    }
+
+    @Test
+    void authenticate_WrongPassword_ThrowsExceptionAndIsNotCached() {
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(token("user", "wrong")));
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(token("user", "wrong")));
+
+        verify(passwordEncoder, times(2)).matches(any(), any());
+    }
+
+    @Test
+    void authenticate_PasswordChanged_VerifiesAgainAndRejectsOldPassword() {
+        cachingAuthenticationProvider.authenticate(token("user", "12345"));
+
+        userDetailsManager.updateUser(User.withUsername("user").password("{encoded}54321").roles("ADMIN").build());
+
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(token("user", "12345")));
+        assertTrue(cachingAuthenticationProvider.authenticate(token("user", "54321")).isAuthenticated());
+    }
+
+    @Test
+    void authenticate_UserDisabledAfterCaching_ThrowsException() {
+        cachingAuthenticationProvider.authenticate(token("user", "12345"));
+
+        userDetailsManager.updateUser(User.withUsername("user").password("{encoded}12345").roles("ADMIN").disabled(true).build());
+
+        assertThrows(DisabledException.class, () -> cachingAuthenticationProvider.authenticate(token("user", "12345")));
+    }
+
+    private static UsernamePasswordAuthenticationToken token(String username, String password) {
+        return UsernamePasswordAuthenticationToken.unauthenticated(username, password);
+    }
+}
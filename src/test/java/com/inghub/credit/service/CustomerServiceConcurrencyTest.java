@@ -0,0 +1,105 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@Import({CustomerService.class, CustomerCache.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerServiceConcurrencyTest {
+
+    private static final int THREAD_COUNT = 16;
+    private static final int ATTEMPTS_PER_THREAD = 10;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    void increaseCustomerUsedCreditLimit_ConcurrentReservations_NeverOverAllocate() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("1000.00"));
+        BigDecimal amount = new BigDecimal("30.00");
+
+        AtomicInteger granted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        runConcurrently(() -> {
+            try {
+                customerService.increaseCustomerUsedCreditLimit(customer.getId(), amount);
+                granted.incrementAndGet();
+            } catch (IllegalArgumentException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        BigDecimal usedCreditLimit = customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit();
+        // 1000 / 30 -> only 33 reservations fit into the limit
+        assertEquals(33, granted.get());
+        assertEquals(THREAD_COUNT * ATTEMPTS_PER_THREAD - 33, rejected.get());
+        assertEquals(0, usedCreditLimit.compareTo(amount.multiply(BigDecimal.valueOf(granted.get()))));
+    }
+
+    @Test
+    void increaseAndDecreaseCustomerUsedCreditLimit_ConcurrentUpdates_DoNotLoseUpdates() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("1000000.00"));
+        BigDecimal amount = new BigDecimal("10.00");
+
+        AtomicInteger counter = new AtomicInteger();
+        runConcurrently(() -> {
+            if (counter.incrementAndGet() % 2 == 0) {
+                customerService.decreaseCustomerUsedCreditLimit(customer.getId(), amount);
+            } else {
+                customerService.increaseCustomerUsedCreditLimit(customer.getId(), amount.add(amount));
+            }
+        });
+
+        BigDecimal usedCreditLimit = customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit();
+        // half of the calls add 20, the other half subtract 10
+        BigDecimal expected = amount.multiply(BigDecimal.valueOf(THREAD_COUNT * ATTEMPTS_PER_THREAD / 2));
+        assertEquals(0, usedCreditLimit.compareTo(expected));
+    }
+
+
+    private void runConcurrently(Runnable task) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executorService.submit(() -> {
+                    startLatch.await();
+                    for (int j = 0; j < ATTEMPTS_PER_THREAD; j++) {
+                        task.run();
+                    }
+                    return null;
+                }));
+            }
+            startLatch.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
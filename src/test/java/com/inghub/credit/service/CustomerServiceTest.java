@@ -3,13 +3,17 @@ package com.inghub.credit.service;
 import com.inghub.credit.domain.Customer;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +24,11 @@ class CustomerServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private CustomerCache customerCache = new CustomerCache(meterRegistry, Duration.ofMinutes(1), 100);
+
     @InjectMocks
     private CustomerService customerService;
 
@@ -54,37 +63,41 @@ class CustomerServiceTest {
     }
 
     @Test
-    void checkCustomerHasEnoughLimitToGetNewLoan_SufficientLimit_DoesNotThrowException() {
+    void increaseCustomerUsedCreditLimit_SufficientLimit_ReservesLimit() {
 
         Long customerId = 1L;
-        BigDecimal newLoanAmount = BigDecimal.valueOf(500);
-        Customer mockCustomer = new Customer();
-        mockCustomer.setId(customerId);
-        mockCustomer.setCreditLimit(BigDecimal.valueOf(1000));
-        mockCustomer.setUsedCreditLimit(BigDecimal.valueOf(400));
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(mockCustomer));
-
+        BigDecimal usedLoanAmount = BigDecimal.valueOf(200);
+        when(customerRepository.increaseUsedCreditLimitIfAvailable(eq(customerId), eq(usedLoanAmount), any(LocalDateTime.class))).thenReturn(1);
 
-        assertDoesNotThrow(() -> customerService.checkCustomerHasEnoughLimitToGetNewLoan(customerId, newLoanAmount));
-        verify(customerRepository, times(1)).findById(customerId);
+        assertDoesNotThrow(() -> customerService.increaseCustomerUsedCreditLimit(customerId, usedLoanAmount));
+        verify(customerRepository, never()).findById(customerId);
+        verify(customerRepository, never()).save(any());
     }
 
     @Test
-    void checkCustomerHasEnoughLimitToGetNewLoan_InsufficientLimit_ThrowsException() {
+    void increaseCustomerUsedCreditLimit_InsufficientLimit_ThrowsException() {
 
         Long customerId = 1L;
-        BigDecimal newLoanAmount = BigDecimal.valueOf(700);
-        Customer mockCustomer = new Customer();
-        mockCustomer.setId(customerId);
-        mockCustomer.setCreditLimit(BigDecimal.valueOf(1000));
-        mockCustomer.setUsedCreditLimit(BigDecimal.valueOf(400));
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(mockCustomer));
-
+        BigDecimal usedLoanAmount = BigDecimal.valueOf(700);
+        when(customerRepository.increaseUsedCreditLimitIfAvailable(eq(customerId), eq(usedLoanAmount), any(LocalDateTime.class))).thenReturn(0);
+        when(customerRepository.existsById(customerId)).thenReturn(true);
 
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
-                                                          () -> customerService.checkCustomerHasEnoughLimitToGetNewLoan(customerId, newLoanAmount));
+                                                          () -> customerService.increaseCustomerUsedCreditLimit(customerId, usedLoanAmount));
         assertEquals("Insufficient credit limit.", exception.getMessage());
-        verify(customerRepository, times(1)).findById(customerId);
+    }
+
+    @Test
+    void increaseCustomerUsedCreditLimit_CustomerDoesNotExist_ThrowsException() {
+
+        Long customerId = 1L;
+        BigDecimal usedLoanAmount = BigDecimal.valueOf(700);
+        when(customerRepository.increaseUsedCreditLimitIfAvailable(eq(customerId), eq(usedLoanAmount), any(LocalDateTime.class))).thenReturn(0);
+        when(customerRepository.existsById(customerId)).thenReturn(false);
+
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class,
+                                                           () -> customerService.increaseCustomerUsedCreditLimit(customerId, usedLoanAmount));
+        assertEquals("Customer not found with given id: " + customerId, exception.getMessage());
     }
 
     @Test
@@ -92,30 +105,90 @@ class CustomerServiceTest {
 
         Long customerId = 1L;
         BigDecimal closedLoanAmount = BigDecimal.valueOf(200);
+        when(customerRepository.decreaseUsedCreditLimit(eq(customerId), eq(closedLoanAmount), any(LocalDateTime.class))).thenReturn(1);
+
+        customerService.decreaseCustomerUsedCreditLimit(customerId, closedLoanAmount);
+
+        verify(customerRepository, times(1)).decreaseUsedCreditLimit(eq(customerId), eq(closedLoanAmount), any(LocalDateTime.class));
+        verify(customerRepository, never()).save(any());
+    }
+
+    @Test
+    void decreaseCustomerUsedCreditLimit_CustomerDoesNotExist_ThrowsException() {
+
+        Long customerId = 1L;
+        BigDecimal closedLoanAmount = BigDecimal.valueOf(200);
+        when(customerRepository.decreaseUsedCreditLimit(eq(customerId), eq(closedLoanAmount), any(LocalDateTime.class))).thenReturn(0);
+
+        assertThrows(ResourceNotFoundException.class, () -> customerService.decreaseCustomerUsedCreditLimit(customerId, closedLoanAmount));
+    }
+
+    @Test
+    void findCachedById_RepeatedReads_LoadCustomerOnce() {
+        Long customerId = 1L;
         Customer mockCustomer = new Customer();
         mockCustomer.setId(customerId);
-        mockCustomer.setUsedCreditLimit(BigDecimal.valueOf(500));
+        mockCustomer.setCreditLimit(BigDecimal.valueOf(1000));
+        mockCustomer.setUsedCreditLimit(BigDecimal.ZERO);
         when(customerRepository.findById(customerId)).thenReturn(Optional.of(mockCustomer));
 
-        customerService.decreaseCustomerUsedCreditLimit(customerId, closedLoanAmount);
+        customerService.findCachedById(customerId);
+        customerService.checkCustomerExists(customerId);
 
-        assertEquals(BigDecimal.valueOf(300), mockCustomer.getUsedCreditLimit());
-        verify(customerRepository, times(1)).save(mockCustomer);
+        verify(customerRepository, times(1)).findById(customerId);
+        assertEquals(1, customerCache.stats().hitCount());
+        assertEquals(1, customerCache.stats().missCount());
+        assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "customer", "result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "customer", "result", "miss").functionCounter().count());
     }
 
     @Test
-    void increaseCustomerUsedCreditLimit_UpdatesUsedCreditLimit() {
+    void findCachedById_CustomerDoesNotExist_ThrowsExceptionAndIsNotCached() {
+        Long customerId = 1L;
+        when(customerRepository.findById(customerId)).thenReturn(Optional.empty());
 
+        assertThrows(ResourceNotFoundException.class, () -> customerService.findCachedById(customerId));
+        assertThrows(ResourceNotFoundException.class, () -> customerService.checkCustomerExists(customerId));
+
+        verify(customerRepository, times(2)).findById(customerId);
+        assertEquals(0, customerCache.estimatedSize());
+    }
+
+    @Test
+    void increaseCustomerUsedCreditLimit_EvictsCachedCustomer() {
         Long customerId = 1L;
-        BigDecimal usedLoanAmount = BigDecimal.valueOf(200);
         Customer mockCustomer = new Customer();
         mockCustomer.setId(customerId);
-        mockCustomer.setUsedCreditLimit(BigDecimal.valueOf(500));
+        mockCustomer.setCreditLimit(BigDecimal.valueOf(1000));
+        mockCustomer.setUsedCreditLimit(BigDecimal.ZERO);
         when(customerRepository.findById(customerId)).thenReturn(Optional.of(mockCustomer));
+        when(customerRepository.increaseUsedCreditLimitIfAvailable(eq(customerId), any(), any(LocalDateTime.class))).thenReturn(1);
+        customerService.findCachedById(customerId);
 
-        customerService.increaseCustomerUsedCreditLimit(customerId, usedLoanAmount);
+        mockCustomer.setUsedCreditLimit(BigDecimal.valueOf(200));
+        customerService.increaseCustomerUsedCreditLimit(customerId, BigDecimal.valueOf(200));
 
-        assertEquals(BigDecimal.valueOf(700), mockCustomer.getUsedCreditLimit());
-        verify(customerRepository, times(1)).save(mockCustomer);
+        assertEquals(0, customerService.findCachedById(customerId).usedCreditLimit().compareTo(BigDecimal.valueOf(200)));
+        verify(customerRepository, times(2)).findById(customerId);
+    }
+
+    @Test
+    void findCachedById_CustomerEvictedWhileLoading_DoesNotCacheTheLoadedSnapshot() {
+        Long customerId = 1L;
+        Customer mockCustomer = new Customer();
+        mockCustomer.setId(customerId);
+        mockCustomer.setCreditLimit(BigDecimal.valueOf(1000));
+        mockCustomer.setUsedCreditLimit(BigDecimal.ZERO);
+        //a limit change commits between the read of the row and the put into the cache
+        when(customerRepository.findById(customerId)).thenAnswer(invocation -> {
+            customerCache.evict(customerId);
+            return Optional.of(mockCustomer);
+        });
+
+        customerService.findCachedById(customerId);
+        customerService.findCachedById(customerId);
+
+        verify(customerRepository, times(2)).findById(customerId);
+        assertEquals(0, customerCache.estimatedSize());
     }
 }
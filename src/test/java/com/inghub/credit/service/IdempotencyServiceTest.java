@@ -0,0 +1,239 @@
+package com.inghub.credit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.exception.CreditException;
+import com.inghub.credit.job.IdempotencyKeyPurgeJob;
+import com.inghub.credit.model.CreateLoanRequest;
+import com.inghub.credit.model.CreateLoanResponse;
+import com.inghub.credit.model.PayLoanRequest;
+import com.inghub.credit.model.PayLoanResponse;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.repository.IdempotencyKeyRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({IdempotencyService.class, ConflictRetryTemplate.class, IdempotencyKeyPurgeJob.class, LoanService.class, LoanInstallmentService.class, CustomerService.class,
+        CustomerCache.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyServiceTest {
+
+    private static final PayLoanRequest PAY_LOAN_REQUEST = new PayLoanRequest(1L, new BigDecimal("100.00"));
+    private static final PayLoanResponse PAY_LOAN_RESPONSE = new PayLoanResponse(1L, 2, 200.00, false);
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyKeyPurgeJob idempotencyKeyPurgeJob;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ConflictRetryTemplate conflictRetryTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void execute_RetriedCreateLoan_CreatesLoanAndReservesLimitOnce() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        CreateLoanRequest request = new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        String key = UUID.randomUUID().toString();
+
+        CreateLoanResponse first = idempotencyService.execute("createLoan", key, request, CreateLoanResponse.class, () -> createLoan(request));
+        CreateLoanResponse retried = idempotencyService.execute("createLoan", key, request, CreateLoanResponse.class, () -> createLoan(request));
+
+        //the replay is the JSON response of the first request, insertDate is written in seconds
+        assertEquals(objectMapper.writeValueAsString(first), objectMapper.writeValueAsString(retried));
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from loan where customer_id = ?", Integer.class, customer.getId()));
+        assertEquals(0, new BigDecimal("1000.00").compareTo(customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit()));
+    }
+
+    @Test
+    void execute_AfterRestart_ReplaysStoredResponseFromTable() {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+        //a new instance starts with an empty cache
+        IdempotencyService restartedService = new IdempotencyService(idempotencyKeyRepository, transactionManager, conflictRetryTemplate, objectMapper, meterRegistry,
+                                                                     Duration.ofMinutes(10), 100, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                                                                     Duration.ofMillis(50));
+        PayLoanResponse replayed = restartedService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+        assertEquals(PAY_LOAN_RESPONSE, replayed);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_SameKeyWithDifferentRequest_ThrowsCreditException() {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+        PayLoanRequest changedRequest = new PayLoanRequest(1L, new BigDecimal("200.00"));
+        CreditException exception = assertThrows(CreditException.class,
+                                                  () -> idempotencyService.execute("payLoan", key, changedRequest, PayLoanResponse.class, () -> pay(executions)));
+
+        assertEquals("Idempotency key " + key + " was already used with a different request", exception.getMessage());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_FailedRequest_ReleasesKeyForRetry() {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(CreditException.class, () -> idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> {
+            executions.incrementAndGet();
+            throw new CreditException("No installments are eligible for payment for loanId: 1");
+        }));
+        PayLoanResponse retried = idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+        assertEquals(PAY_LOAN_RESPONSE, retried);
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_ConcurrentDuplicate_WaitsForFirstResponse() throws Exception {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PayLoanResponse> first = executor.submit(() -> idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> {
+                firstStarted.countDown();
+                await(releaseFirst);
+                return pay(executions);
+            }));
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+            Future<PayLoanResponse> duplicate = executor.submit(() -> idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class,
+                                                                                                 () -> pay(executions)));
+
+            Thread.sleep(200);
+            assertFalse(duplicate.isDone());
+            releaseFirst.countDown();
+
+            assertEquals(PAY_LOAN_RESPONSE, first.get(5, TimeUnit.SECONDS));
+            assertEquals(PAY_LOAN_RESPONSE, duplicate.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_SameKeyFromAnotherCaller_RunsAgainWithoutReplayingTheFirstResponse() {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        PayLoanResponse otherResponse = new PayLoanResponse(1L, 1, 100.00, false);
+        try {
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("first", "password"));
+            idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("second", "password"));
+            PayLoanResponse response = idempotencyService.execute("payLoan", key, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> {
+                executions.incrementAndGet();
+                return otherResponse;
+            });
+
+            assertEquals(otherResponse, response);
+            assertEquals(2, executions.get());
+            assertEquals(2, jdbcTemplate.queryForObject("select count(*) from idempotency_key where idempotency_key like ?", Integer.class, "%:" + key));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    void execute_WithoutKey_RunsEveryTime() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyService.execute("payLoan", null, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+        idempotencyService.execute("payLoan", null, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void purge_DeletesKeysOlderThanRetention() {
+        String oldKey = UUID.randomUUID().toString();
+        String recentKey = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyService.execute("payLoan", oldKey, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+        idempotencyService.execute("payLoan", recentKey, PAY_LOAN_REQUEST, PayLoanResponse.class, () -> pay(executions));
+        jdbcTemplate.update("update idempotency_key set idate = dateadd(day, -2, idate) where idempotency_key = ?", IdempotencyService.storedKey(oldKey));
+
+        idempotencyKeyPurgeJob.run();
+
+        assertFalse(idempotencyKeyRepository.existsById(IdempotencyService.storedKey(oldKey)));
+        assertTrue(idempotencyKeyRepository.existsById(IdempotencyService.storedKey(recentKey)));
+    }
+
+    private CreateLoanResponse createLoan(CreateLoanRequest request) {
+        return loanService.createLoan(request.customerId(), request.loanAmount(), request.numberOfInstallment(), request.interestRate());
+    }
+
+    private static PayLoanResponse pay(AtomicInteger executions) {
+        executions.incrementAndGet();
+        return PAY_LOAN_RESPONSE;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.model.CreateLoanBatchItemResult;
+import com.inghub.credit.model.CreateLoanBatchResponse;
+import com.inghub.credit.model.CreateLoanRequest;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.repository.LoanRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {SqlStatementCounter.PROPERTY, "credit.loan.batch.chunk-size=4", "credit.loan.batch.max-size=20"})
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@Import({LoanBatchService.class, LoanService.class, CustomerService.class, CustomerCache.class, LoanInstallmentService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanBatchServiceTest {
+
+    @Autowired
+    private LoanBatchService loanBatchService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @BeforeEach
+    void setUp() {
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void createLoans_ValidChunk_InsertsLoansAndInstallmentsInBatchedStatements() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        List<CreateLoanRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            requests.add(new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 12, new BigDecimal("0.10")));
+        }
+
+        SqlStatementCounter.clear();
+        CreateLoanBatchResponse response = loanBatchService.createLoans(requests);
+
+        assertEquals(4, response.successCount());
+        assertEquals(0, response.failureCount());
+        // one limit reservation for the customer of the chunk, the loans and their 48 installments go in one batched insert each
+        assertEquals(1, SqlStatementCounter.count("update customer"));
+        assertEquals(1, SqlStatementCounter.count("insert into loan "));
+        assertEquals(1, SqlStatementCounter.count("insert into loan_installment "));
+        assertEquals(0, customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit().compareTo(new BigDecimal("4000.00")));
+    }
+
+    @Test
+    void createLoans_InvalidItems_AreReportedWithoutRollingBackOthers() {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("2500.00"));
+        List<CreateLoanRequest> requests = List.of(
+                new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10")),
+                new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 7, new BigDecimal("0.10")),
+                new CreateLoanRequest(customer.getId(), null, 6, new BigDecimal("0.10")),
+                new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10")),
+                // exceeds the remaining limit, rolls back its chunk which is then retried item by item
+                new CreateLoanRequest(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10")),
+                new CreateLoanRequest(-1L, new BigDecimal("100.00"), 6, new BigDecimal("0.10")));
+
+        CreateLoanBatchResponse response = loanBatchService.createLoans(requests);
+
+        assertEquals(2, response.successCount());
+        assertEquals(4, response.failureCount());
+        assertEquals(List.of(true, false, false, true, false, false), response.results().stream().map(CreateLoanBatchItemResult::success).toList());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), response.results().stream().map(CreateLoanBatchItemResult::index).toList());
+        assertEquals("Invalid number of installments. Must be: [6, 9, 12, 24]", response.results().get(1).errorMessage());
+        assertEquals("loanAmount must not be null", response.results().get(2).errorMessage());
+        assertEquals("Insufficient credit limit.", response.results().get(4).errorMessage());
+        assertEquals("Customer not found with given id: -1", response.results().get(5).errorMessage());
+        assertNotNull(response.results().get(0).loan().id());
+
+        assertEquals(0, customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit().compareTo(new BigDecimal("2000.00")));
+        assertTrue(loanRepository.existsById(response.results().get(3).loan().id()));
+    }
+
+    @Test
+    void createLoans_TooManyItems_ThrowsException() {
+        List<CreateLoanRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            requests.add(new CreateLoanRequest(1L, new BigDecimal("1.00"), 6, new BigDecimal("0.10")));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> loanBatchService.createLoans(requests));
+        assertThrows(IllegalArgumentException.class, () -> loanBatchService.createLoans(List.of()));
+    }
+}
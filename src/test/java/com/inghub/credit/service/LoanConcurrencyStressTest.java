@@ -0,0 +1,167 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.exception.ResourceNotFoundException;
+import com.inghub.credit.job.LoanSummaryVerificationJob;
+import com.inghub.credit.job.LoanSummaryVerificationResult;
+import com.inghub.credit.repository.CustomerRepository;
+import com.inghub.credit.repository.LoanRepository;
+import com.inghub.credit.retry.ConflictRetryTemplate;
+import com.inghub.credit.retry.RetryOnConflictAspect;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Payments of one loan racing with loan creations of its customer. Every payment pays one installment, so whatever
+ * the interleaving the loan ends with exactly twelve successful payments, a consistent summary and a used credit limit
+ * that accounts for every committed payment and creation once.
+ */
+@Slf4j
+@DataJpaTest
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(AopAutoConfiguration.class)
+@Import({LoanPaymentService.class, PaymentLedgerService.class, LoanService.class, LoanInstallmentService.class, CustomerService.class, CustomerCache.class,
+        ConflictRetryTemplate.class, RetryOnConflictAspect.class, LoanSummaryVerificationJob.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanConcurrencyStressTest {
+
+    private static final int PAYER_COUNT = 4;
+    private static final int CREATOR_COUNT = 4;
+    private static final int LOANS_PER_CREATOR = 10;
+    private static final int INSTALLMENT_COUNT = 12;
+
+    @Autowired
+    private LoanPaymentService loanPaymentService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanSummaryVerificationJob loanSummaryVerificationJob;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void payLoanAndSaveLoan_ConcurrentOnOneCustomer_KeepLoanAndLimitConsistent() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("1000000.00"));
+        // 1200.00 at 0.10 in 12 installments of 110.00, moved a year back so every installment is payable
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1200.00"), INSTALLMENT_COUNT, new BigDecimal("0.10"));
+        jdbcTemplate.update("update loan_installment set due_date = dateadd(month, -12, due_date) where loan_id = ?", loan.getId());
+        jdbcTemplate.update("update loan set next_due_date = dateadd(month, -12, next_due_date) where id = ?", loan.getId());
+        BigDecimal installmentAmount = new BigDecimal("110.00");
+
+        AtomicInteger payments = new AtomicInteger();
+        AtomicInteger exhaustedPayments = new AtomicInteger();
+        AtomicInteger createdLoans = new AtomicInteger();
+        AtomicInteger exhaustedCreations = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < PAYER_COUNT; i++) {
+            tasks.add(() -> {
+                while (true) {
+                    try {
+                        loanPaymentService.payLoan(loan.getId(), installmentAmount);
+                        payments.incrementAndGet();
+                    } catch (ResourceNotFoundException e) {
+                        return null; // the loan is paid
+                    } catch (ConcurrencyFailureException e) {
+                        exhaustedPayments.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < CREATOR_COUNT; i++) {
+            tasks.add(() -> {
+                for (int j = 0; j < LOANS_PER_CREATOR; j++) {
+                    try {
+                        loanService.saveLoan(customer.getId(), new BigDecimal("100.00"), 6, new BigDecimal("0.10"));
+                        createdLoans.incrementAndGet();
+                    } catch (ConcurrencyFailureException e) {
+                        exhaustedCreations.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        long startNanos = System.nanoTime();
+        runConcurrently(tasks);
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        Loan paidLoan = loanRepository.findById(loan.getId()).orElseThrow();
+        assertEquals(INSTALLMENT_COUNT, payments.get());
+        assertTrue(paidLoan.isPaid());
+        assertEquals(INSTALLMENT_COUNT, paidLoan.getPaidInstallmentCount());
+        assertEquals(0, BigDecimal.ZERO.compareTo(paidLoan.getRemainingAmount()));
+        assertEquals(INSTALLMENT_COUNT, jdbcTemplate.queryForObject("select count(*) from loan_installment where loan_id = ? and is_paid", Integer.class, loan.getId()));
+        assertEquals(CREATOR_COUNT * LOANS_PER_CREATOR, createdLoans.get() + exhaustedCreations.get());
+
+        // 1200.00 reserved for the paid loan, 1320.00 paid back and 100.00 reserved per created loan
+        BigDecimal expectedUsedCreditLimit = new BigDecimal("1200.00").subtract(new BigDecimal("1320.00"))
+                .add(new BigDecimal("100.00").multiply(BigDecimal.valueOf(createdLoans.get())));
+        assertEquals(0, expectedUsedCreditLimit.compareTo(customerRepository.findById(customer.getId()).orElseThrow().getUsedCreditLimit()));
+
+        LoanSummaryVerificationResult verification = loanSummaryVerificationJob.run();
+        assertFalse(verification.mismatchedLoanIds().contains(loan.getId()));
+
+        int operations = payments.get() + createdLoans.get();
+        log.info("Concurrent payments and creations: {} operations in {} s ({} ops/s), {} conflict retries, {} payments and {} creations gave up",
+                 operations, String.format("%.3f", elapsedSeconds), String.format("%.1f", operations / elapsedSeconds),
+                 (long) meterRegistry.find("credit.retry.conflicts").tag("result", "retried").counters().stream().mapToDouble(Counter::count).sum(),
+                 exhaustedPayments.get(), exhaustedCreations.get());
+    }
+
+
+    private static void runConcurrently(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(executorService.submit(() -> {
+                    startLatch.await();
+                    return task.call();
+                }));
+            }
+            startLatch.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.model.ListLoanInstallmentsResponse;
+import com.inghub.credit.model.ListLoanResponse;
+import com.inghub.credit.model.dto.LoanDTO;
+import com.inghub.credit.model.dto.LoanInstallmentDTO;
+import com.inghub.credit.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@Import({LoanService.class, CustomerService.class, CustomerCache.class, LoanInstallmentService.class, SimpleMeterRegistry.class})
+class LoanCursorPaginationTest {
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanInstallmentService loanInstallmentService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+    }
+
+    @Test
+    void searchLoansByCustomerId_CursorPages_MatchOffsetOrdering() {
+        for (String amount : List.of("300.00", "100.00", "200.00", "100.00", "500.00", "200.00", "400.00")) {
+            loanService.saveLoan(customer.getId(), new BigDecimal(amount), 6, new BigDecimal("0.10"));
+        }
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        List<Long> expectedIds = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 100, 1, "-loanAmount,-id", null, true)
+                .loans().stream().map(LoanDTO::id).toList();
+
+        List<Long> cursorIds = new ArrayList<>();
+        String cursor = "";
+        int pageCount = 0;
+        while (cursor != null) {
+            ListLoanResponse page = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 3, null, "-loanAmount", cursor, true);
+            page.loans().forEach(loan -> cursorIds.add(loan.id()));
+            assertNull(page.apiModelPage().totalNumberOfRecords());
+            assertEquals(pageCount > 0, page.apiModelPage().hasPreviousPage());
+            cursor = page.apiModelPage().nextCursor();
+            pageCount++;
+        }
+
+        assertEquals(7, expectedIds.size());
+        assertEquals(expectedIds, cursorIds);
+        assertEquals(3, pageCount);
+    }
+
+    @Test
+    void searchLoanInstallmentsByLoanId_CursorPage_ReadsWithoutCountQuery() {
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1200.00"), 24, new BigDecimal("0.20"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        List<LoanInstallmentDTO> expected = loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 100, 1, "+dueDate", null, true).loanInstallments();
+
+        List<LoanInstallmentDTO> actual = new ArrayList<>();
+        String cursor = "";
+        while (cursor != null) {
+            SqlStatementCounter.clear();
+            ListLoanInstallmentsResponse page = loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 5, null, "+dueDate", cursor, true);
+            assertEquals(1, SqlStatementCounter.total());
+            actual.addAll(page.loanInstallments());
+            cursor = page.apiModelPage().nextCursor();
+        }
+
+        assertEquals(24, actual.size());
+        assertEquals(expected.stream().map(LoanInstallmentDTO::id).toList(), actual.stream().map(LoanInstallmentDTO::id).toList());
+    }
+
+    @Test
+    void searchLoansByCustomerId_AllPagingModes_LoadNoLoanEntities() {
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("100.00"), 6, new BigDecimal("0.10"));
+        loanService.saveLoan(customer.getId(), new BigDecimal("200.00"), 6, new BigDecimal("0.10"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        ListLoanResponse withTotal = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, 1, "+loanAmount", null, true);
+        loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, 2, "+loanAmount", null, false);
+        loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, null, "+loanAmount", "", true);
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 2, 1, "+dueDate", null, true);
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 2, 2, "+dueDate", null, false);
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 2, null, "+dueDate", "", true);
+
+        LoanDTO loanDTO = withTotal.loans().get(0);
+        assertEquals(loan.getId(), loanDTO.id());
+        assertEquals(customer.getId(), loanDTO.customerId());
+        assertEquals(100.0, loanDTO.loanAmount());
+        assertEquals(6, loanDTO.numberOfInstallment());
+        assertFalse(loanDTO.isPaid());
+        //only the customer existence check loads an entity
+        PersistenceContext persistenceContext = testEntityManager.getEntityManager().unwrap(SessionImplementor.class).getPersistenceContext();
+        assertTrue(persistenceContext.getEntitiesByKey().keySet().stream().allMatch(key -> key.getEntityName().equals(Customer.class.getName())));
+    }
+
+    @Test
+    void searchLoansByCustomerId_CursorForDifferentSort_ThrowsException() {
+        loanService.saveLoan(customer.getId(), new BigDecimal("100.00"), 6, new BigDecimal("0.10"));
+        loanService.saveLoan(customer.getId(), new BigDecimal("200.00"), 6, new BigDecimal("0.10"));
+        String cursor = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, null, "+loanAmount", "", true).apiModelPage().nextCursor();
+
+        assertNotNull(cursor);
+        assertThrows(IllegalArgumentException.class,
+                     () -> loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, null, "-numberOfInstallment", cursor, true));
+    }
+
+    @Test
+    void searchLoansByCustomerId_WithoutTotal_MatchesOffsetPagesWithoutCountQuery() {
+        for (String amount : List.of("300.00", "100.00", "200.00", "100.00", "500.00", "200.00", "400.00")) {
+            loanService.saveLoan(customer.getId(), new BigDecimal(amount), 6, new BigDecimal("0.10"));
+        }
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            ListLoanResponse withTotal = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 3, pageNumber, "-loanAmount,-id", null, true);
+
+            SqlStatementCounter.clear();
+            ListLoanResponse withoutTotal = loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 3, pageNumber, "-loanAmount,-id", null, false);
+
+            assertEquals(1, SqlStatementCounter.total());
+            assertEquals(0, SqlStatementCounter.count("select count"));
+            assertEquals(withTotal.loans().stream().map(LoanDTO::id).toList(), withoutTotal.loans().stream().map(LoanDTO::id).toList());
+            assertEquals(withTotal.apiModelPage().hasNextPage(), withoutTotal.apiModelPage().hasNextPage());
+            assertEquals(withTotal.apiModelPage().hasPreviousPage(), withoutTotal.apiModelPage().hasPreviousPage());
+            assertEquals(pageNumber, withoutTotal.apiModelPage().pageNumber());
+            assertNull(withoutTotal.apiModelPage().totalNumberOfRecords());
+            assertNull(withoutTotal.apiModelPage().totalNumberOfPages());
+        }
+    }
+
+    @Test
+    void searchLoanInstallmentsByLoanId_WithoutTotal_ReadsWithoutCountQuery() {
+        Loan loan = loanService.saveLoan(customer.getId(), new BigDecimal("1200.00"), 12, new BigDecimal("0.20"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        SqlStatementCounter.clear();
+        ListLoanInstallmentsResponse lastPage = loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 5, 3, "+dueDate", null, false);
+
+        assertEquals(1, SqlStatementCounter.count("select li1_0"));
+        assertEquals(0, SqlStatementCounter.count("select count"));
+        assertEquals(2, lastPage.loanInstallments().size());
+        assertFalse(lastPage.apiModelPage().hasNextPage());
+        assertTrue(lastPage.apiModelPage().hasPreviousPage());
+        assertNull(lastPage.apiModelPage().totalNumberOfRecords());
+    }
+}
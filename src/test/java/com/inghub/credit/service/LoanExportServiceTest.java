@@ -0,0 +1,98 @@
+package com.inghub.credit.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({LoanExportService.class, LoanService.class, CustomerService.class, CustomerCache.class, LoanInstallmentService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanExportServiceTest {
+
+    @Autowired
+    private LoanExportService loanExportService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void exportLoansByCustomerId_WritesEachLoanFollowedByItsInstallments() throws Exception {
+        Customer customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+        Loan firstLoan = loanService.saveLoan(customer.getId(), new BigDecimal("1000.00"), 6, new BigDecimal("0.10"));
+        Loan secondLoan = loanService.saveLoan(customer.getId(), new BigDecimal("2000.00"), 12, new BigDecimal("0.20"));
+        loanService.saveLoan(TestCustomers.save(customerRepository, new BigDecimal("100000.00")).getId(), new BigDecimal("500.00"), 6, new BigDecimal("0.10"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SqlStatementCounter.clear();
+        long installmentCount = loanExportService.exportLoansByCustomerId(customer.getId(), outputStream);
+
+        assertEquals(18, installmentCount);
+        // loans and installments are read by one cursor, no entity or association is loaded
+        assertEquals(1, SqlStatementCounter.total());
+
+        String export = outputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(export.endsWith("\n"));
+        List<JsonNode> lines = export.lines().map(this::readLine).toList();
+        assertEquals(20, lines.size());
+
+        assertEquals(firstLoan.getId(), lines.get(0).get("loan").get("id").asLong());
+        assertEquals(customer.getId(), lines.get(0).get("loan").get("customerId").asLong());
+        assertEquals(6, lines.get(0).get("loan").get("numberOfInstallment").asInt());
+        assertTrue(lines.subList(1, 7).stream().allMatch(line -> line.get("loanId").asLong() == firstLoan.getId() && line.has("installment")));
+        assertEquals(secondLoan.getId(), lines.get(7).get("loan").get("id").asLong());
+        assertTrue(lines.subList(8, 20).stream().allMatch(line -> line.get("loanId").asLong() == secondLoan.getId() && !line.has("loan")));
+        assertTrue(lines.get(8).get("installment").get("dueDate").asText().compareTo(lines.get(9).get("installment").get("dueDate").asText()) < 0);
+    }
+
+    @Test
+    void exportLoansByCustomerId_NoLoans_WritesNothing() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assertEquals(0, loanExportService.exportLoansByCustomerId(TestCustomers.save(customerRepository, new BigDecimal("100000.00")).getId(), outputStream));
+        assertEquals(0, outputStream.size());
+    }
+
+    private JsonNode readLine(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (Exception e) {
+            throw new IllegalStateException(line, e);
+        }
+    }
+}
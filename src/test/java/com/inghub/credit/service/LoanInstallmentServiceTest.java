@@ -2,6 +2,7 @@ package com.inghub.credit.service;
 
 import com.inghub.credit.domain.Loan;
 import com.inghub.credit.domain.LoanInstallment;
+import com.inghub.credit.exception.CreditException;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.repository.LoanInstallmentRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,12 +11,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,12 +34,16 @@ class LoanInstallmentServiceTest {
         // Called before each test - Initialize mocks
     }
 
-    private LoanInstallment createInstallmentWithDueDate(Long id, BigDecimal amount, LocalDate dueDate) {
-        LoanInstallment installment = new LoanInstallment();
-        installment.setId(id);
-        installment.setAmount(amount);
-        installment.setDueDate(dueDate);
-        return installment;
+    // summary of a loan of 6 installments with the given number still unpaid
+    private Loan createLoanSummary(int unpaidCount, BigDecimal remainingAmount, LocalDate nextDueDate, BigDecimal nextInstallmentAmount) {
+        Loan loan = new Loan();
+        loan.setId(1L);
+        loan.setNumberOfInstallment(6);
+        loan.setPaidInstallmentCount(6 - unpaidCount);
+        loan.setRemainingAmount(remainingAmount);
+        loan.setNextDueDate(nextDueDate);
+        loan.setNextInstallmentAmount(nextInstallmentAmount);
+        return loan;
     }
 
 
@@ -64,20 +67,6 @@ class LoanInstallmentServiceTest {
         verify(loanInstallmentRepository, times(1)).findById(1L);
     }
 
-    @Test
-    void testGetPaginatedLoanInstallmentsByLoanId() {
-        PageRequest pageRequest = PageRequest.of(0, 10);
-        List<LoanInstallment> installments = List.of(createDummyLoanInstallment());
-        Page<LoanInstallment> page = new PageImpl<>(installments);
-        when(loanInstallmentRepository.findByLoanId(1L, pageRequest)).thenReturn(page);
-
-        Page<LoanInstallment> result = loanInstallmentService.getPaginatedLoanInstallmentsByLoanId(1L, pageRequest);
-
-        assertNotNull(result);
-        assertEquals(1, result.getContent().size());
-        verify(loanInstallmentRepository, times(1)).findByLoanId(1L, pageRequest);
-    }
-
     @Test
     void testCreateLoanInstallments() {
         Loan loan = new Loan();
@@ -94,23 +83,25 @@ class LoanInstallmentServiceTest {
     }
 
     @Test
-    void testPayMultipleLoanInstallments() {
-        LoanInstallment installment = createDummyLoanInstallment();
-        installment.setPaid(false);
-        when(loanInstallmentRepository.findById(installment.getId())).thenReturn(Optional.of(installment));
+    void testPayLoanInstallmentsDueUntil() {
+        LocalDate lastDueDate = LocalDate.now().plusMonths(1);
+        when(loanInstallmentRepository.markInstallmentsAsPaidDueUntil(eq(1L), eq(lastDueDate), any(LocalDateTime.class))).thenReturn(2);
 
-        loanInstallmentService.payMultipleLoanInstallments(Collections.singletonList(installment.getId()));
+        loanInstallmentService.payLoanInstallmentsDueUntil(1L, lastDueDate, 2);
 
-        assertTrue(installment.isPaid());
-        assertEquals(installment.getAmount(), installment.getPaidAmount());
-        verify(loanInstallmentRepository, times(1)).save(installment);
+        verify(loanInstallmentRepository, times(1)).markInstallmentsAsPaidDueUntil(eq(1L), eq(lastDueDate), any(LocalDateTime.class));
+        verify(loanInstallmentRepository, never()).findById(any());
+        verify(loanInstallmentRepository, never()).save(any());
     }
 
     @Test
-    void testCheckInstallmentDueDateValidation() {
-        boolean result = LoanInstallmentService.checkInstallmentHaveDueDateMoreThanGivenDurationInMonths(LocalDate.now().plusMonths(4), 3);
+    void testPayLoanInstallmentsDueUntil_ShouldThrowWhenRowsDoNotMatchSummary() {
+        LocalDate lastDueDate = LocalDate.of(2025, 3, 1);
+        when(loanInstallmentRepository.markInstallmentsAsPaidDueUntil(eq(1L), eq(lastDueDate), any(LocalDateTime.class))).thenReturn(1);
+
+        CreditException exception = assertThrows(CreditException.class, () -> loanInstallmentService.payLoanInstallmentsDueUntil(1L, lastDueDate, 2));
 
-        assertTrue(result);
+        assertEquals("Installments of loan 1 do not match the loan summary, expected 2 unpaid installments due until 2025-03-01 but found 1", exception.getMessage());
     }
 
     // Helper method to create a dummy LoanInstallment
@@ -156,64 +147,70 @@ class LoanInstallmentServiceTest {
     }
 
     @Test
-    void testPayMultipleLoanInstallments_ShouldHandleEmptyIds() {
-        List<Long> installmentIds = Collections.emptyList();
+    void testCountEligibleInstallments_ShouldConsiderDueDates() {
+        // installments due in 2, 3, 4 and 5 months, the ones due in 4 and 5 months are past the 3-month boundary
+        Loan loan = createLoanSummary(4, BigDecimal.valueOf(2000), LocalDate.now().plusMonths(2), BigDecimal.valueOf(500));
 
-        loanInstallmentService.payMultipleLoanInstallments(installmentIds);
+        int result = LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(2000), 3);
 
-        // Verify no repository methods are called
-        verify(loanInstallmentRepository, never()).save(any());
+        assertEquals(2, result);
     }
 
     @Test
-    void testFindEligibleInstallments_ShouldConsiderDueDates() {
-        LocalDate today = LocalDate.now();
-
-        LoanInstallment installment1 = createInstallmentWithDueDate(1L, BigDecimal.valueOf(500), today.plusMonths(2));
-        LoanInstallment installment2 = createInstallmentWithDueDate(2L, BigDecimal.valueOf(500), today.plusMonths(4)); // Past 3-month boundary
-        LoanInstallment installment3 = createInstallmentWithDueDate(3L, BigDecimal.valueOf(500), today.plusMonths(3)); // On boundary
+    void testCountEligibleInstallments_ShouldUseGivenPaymentWindow() {
+        // installments due in 2, 3, 4 and 5 months
+        Loan loan = createLoanSummary(4, BigDecimal.valueOf(2000), LocalDate.now().plusMonths(2), BigDecimal.valueOf(500));
 
-        List<LoanInstallment> installments = List.of(installment1, installment2, installment3);
+        assertEquals(0, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(2000), 1));
+        assertEquals(3, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(2000), 4));
+        assertEquals(4, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(2000), 6));
+    }
 
-        List<LoanInstallment> result = loanInstallmentService.findEligibleInstallments(installments, BigDecimal.valueOf(1000));
+    @Test
+    void testCountEligibleInstallments_ShouldStopWhenAmountIsInsufficient() {
+        Loan loan = createLoanSummary(4, BigDecimal.valueOf(2000), LocalDate.now().minusMonths(1), BigDecimal.valueOf(500));
 
-        // Only installment1 should be in the result (installment2 is beyond the 3-month boundary)
-        assertEquals(1, result.size());
-        assertEquals(1L, result.get(0).getId());
+        assertEquals(0, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(499.99), 3));
+        assertEquals(1, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(999.99), 3));
+        assertEquals(3, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(1700), 3));
     }
 
     @Test
-    void testCheckNumberOfInstallmentIsValid_ShouldThrowForInvalidNumber() {
-        int invalidInstallmentCount = 7;
-
-        Exception exception = assertThrows(IllegalArgumentException.class, () ->
-                LoanInstallmentService.checkNumberOfInstallmentIsValid(invalidInstallmentCount)
-        );
+    void testCountEligibleInstallments_ShouldUseRemainingAmountForLastInstallment() {
+        // 333.67, 333.67 and 333.66, all overdue
+        Loan loan = createLoanSummary(3, new BigDecimal("1001.00"), LocalDate.now().minusMonths(3), new BigDecimal("333.67"));
 
-        assertEquals("Invalid number of installments. Must be: [6, 9, 12, 24]", exception.getMessage());
+        assertEquals(2, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("1000.99"), 3));
+        assertEquals(3, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("1001.00"), 3));
+        assertEquals(3, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("5000"), 3));
     }
 
     @Test
-    void testCheckInstallmentHaveDueDateMoreThanGivenDurationInMonths_ShouldReturnFalseForPastDate() {
-        LocalDate pastDate = LocalDate.now().minusMonths(1);
+    void testCountEligibleInstallments_ShouldNotRoundPaidAmountUpToAnotherInstallment() {
+        // four installments of 100.01, all overdue
+        Loan loan = createLoanSummary(4, new BigDecimal("400.04"), LocalDate.now().minusMonths(4), new BigDecimal("100.01"));
 
-        boolean result = LoanInstallmentService.checkInstallmentHaveDueDateMoreThanGivenDurationInMonths(pastDate, 3);
-
-        assertFalse(result);
+        assertEquals(1, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("200.015"), 4));
+        assertEquals(1, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("200.019"), 4));
+        assertEquals(2, LoanInstallmentService.countEligibleInstallments(loan, new BigDecimal("200.02"), 4));
     }
 
     @Test
-    void testGetPaginatedLoanInstallmentsByLoanId_ShouldReturnEmptyPage() {
-        Page<LoanInstallment> emptyPage = Page.empty();
-        PageRequest pageRequest = PageRequest.of(0, 10);
+    void testCountEligibleInstallments_ShouldReturnZeroWhenNoInstallmentIsUnpaid() {
+        Loan loan = createLoanSummary(0, BigDecimal.ZERO, null, null);
 
-        when(loanInstallmentRepository.findByLoanId(1L, pageRequest)).thenReturn(emptyPage);
+        assertEquals(0, LoanInstallmentService.countEligibleInstallments(loan, BigDecimal.valueOf(1000), 3));
+    }
 
-        Page<LoanInstallment> result = loanInstallmentService.getPaginatedLoanInstallmentsByLoanId(1L, pageRequest);
+    @Test
+    void testCheckNumberOfInstallmentIsValid_ShouldThrowForInvalidNumber() {
+        int invalidInstallmentCount = 7;
 
-        assertNotNull(result);
-        assertTrue(result.isEmpty());
-        verify(loanInstallmentRepository, times(1)).findByLoanId(1L, pageRequest);
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+                LoanInstallmentService.checkNumberOfInstallmentIsValid(invalidInstallmentCount)
+        );
+
+        assertEquals("Invalid number of installments. Must be: [6, 9, 12, 24]", exception.getMessage());
     }
 
     @Test
@@ -241,4 +238,19 @@ class LoanInstallmentServiceTest {
         assertEquals(0, totalInstallmentAmount.compareTo(expectedTotal));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testCreateLoanInstallments_ShouldSubtractRoundingRemainderFromLastInstallment() {
+        Loan loan = new Loan();
+        loan.setId(1L);
+        List<LocalDate> installmentDates = LoanInstallmentService.createInstallmentDatesByInstallmentCount(3);
+
+        // 1001.00 / 3 is rounded up to 333.67, so the last installment is one cent less
+        List<LoanInstallment> installments = loanInstallmentService.createLoanInstallments(
+                loan, new BigDecimal("910.00"), 3, installmentDates, new BigDecimal("0.10"));
+
+        assertEquals(new BigDecimal("333.67"), installments.get(0).getAmount());
+        assertEquals(new BigDecimal("333.67"), installments.get(1).getAmount());
+        assertEquals(new BigDecimal("333.66"), installments.get(2).getAmount());
+    }
+
+}
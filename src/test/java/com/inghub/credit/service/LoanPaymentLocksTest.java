@@ -0,0 +1,139 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.exception.CreditException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanPaymentLocksTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LoanPaymentLocks loanPaymentLocks;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loanPaymentLocks = new LoanPaymentLocks(meterRegistry, 1000, Duration.ofSeconds(5));
+        executorService = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void constructor_StripeCount_IsRoundedUpToPowerOfTwo() {
+        assertEquals(1024, loanPaymentLocks.stripeCount());
+        assertEquals(1, new LoanPaymentLocks(meterRegistry, 1, Duration.ofSeconds(1)).stripeCount());
+        assertThrows(IllegalArgumentException.class, () -> new LoanPaymentLocks(meterRegistry, 0, Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void stripeIndex_SequentialLoanIds_AreSpreadOverStripes() {
+        int[] loansPerStripe = new int[loanPaymentLocks.stripeCount()];
+        for (long loanId = 1; loanId <= 10_000; loanId++) {
+            loansPerStripe[loanPaymentLocks.stripeIndex(loanId)]++;
+        }
+
+        // 10000 loans over 1024 stripes are about 10 per stripe
+        assertTrue(IntStream.of(loansPerStripe).max().orElseThrow() <= 20);
+    }
+
+    @Test
+    void withLock_SameLoan_RunsOneAtATime() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(() -> loanPaymentLocks.withLock(1L, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                return running.decrementAndGet();
+            })));
+        }
+        for (Future<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(7, meterRegistry.counter("credit.loan.payment.lock.contended").count());
+        assertEquals(7, meterRegistry.timer("credit.loan.payment.lock.wait").count());
+        assertEquals(0, meterRegistry.get("credit.loan.payment.lock.queued").gauge().value());
+    }
+
+    @Test
+    void withLock_DifferentLoans_RunInParallel() throws Exception {
+        assertNotEquals(loanPaymentLocks.stripeIndex(1L), loanPaymentLocks.stripeIndex(2L));
+        CountDownLatch bothRunning = new CountDownLatch(2);
+
+        Future<Boolean> first = executorService.submit(() -> loanPaymentLocks.withLock(1L, () -> awaitBoth(bothRunning)));
+        Future<Boolean> second = executorService.submit(() -> loanPaymentLocks.withLock(2L, () -> awaitBoth(bothRunning)));
+
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.counter("credit.loan.payment.lock.contended").count());
+    }
+
+    @Test
+    void withLock_StripeHeldLongerThanTimeout_ThrowsCreditException() throws Exception {
+        LoanPaymentLocks shortTimeoutLocks = new LoanPaymentLocks(meterRegistry, 16, Duration.ofMillis(50));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> holder = executorService.submit(() -> shortTimeoutLocks.withLock(1L, () -> {
+            holding.countDown();
+            return await(release);
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        CreditException exception = assertThrows(CreditException.class, () -> shortTimeoutLocks.withLock(1L, () -> "paid"));
+
+        assertEquals("Another payment of loan 1 is in progress, please retry", exception.getMessage());
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void withLock_ActionThrows_ReleasesStripe() {
+        assertThrows(IllegalStateException.class, () -> loanPaymentLocks.withLock(1L, () -> {
+            throw new IllegalStateException("payment failed");
+        }));
+
+        assertEquals("paid", loanPaymentLocks.withLock(1L, () -> "paid"));
+        assertEquals(0, meterRegistry.counter("credit.loan.payment.lock.contended").count());
+    }
+
+    private static boolean awaitBoth(CountDownLatch bothRunning) {
+        bothRunning.countDown();
+        return await(bothRunning);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,25 +2,26 @@ package com.inghub.credit.service;
 
 import com.inghub.credit.domain.Customer;
 import com.inghub.credit.domain.Loan;
-import com.inghub.credit.domain.LoanInstallment;
 import com.inghub.credit.exception.CreditException;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.model.PayLoanResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -39,17 +40,24 @@ class LoanPaymentServiceTest {
     @Mock
     private CustomerService customerService;
 
+    @Mock
+    private PaymentLedgerService paymentLedgerService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private LoanPaymentService loanPaymentService;
 
     private Customer testCustomer;
     private Loan testLoan;
-    private LoanInstallment testInstallment1;
-    private LoanInstallment testInstallment2;
-    private LoanInstallment testInstallment3;
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(loanPaymentService, "paymentWindowMonths", 3);
+        //no payments in the ledger unless a test says so
+        lenient().when(paymentLedgerService.withLedgerPayments(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
         testCustomer = new Customer();
         testCustomer.setId(1L);
         testCustomer.setName("John");
@@ -57,6 +65,7 @@ class LoanPaymentServiceTest {
         testCustomer.setCreditLimit(BigDecimal.valueOf(10000));
         testCustomer.setUsedCreditLimit(BigDecimal.valueOf(5000));
 
+        // three unpaid installments of 1000 due monthly from next month
         testLoan = new Loan();
         testLoan.setId(1L);
         testLoan.setCustomer(testCustomer);
@@ -64,30 +73,10 @@ class LoanPaymentServiceTest {
         testLoan.setInterestRate(BigDecimal.valueOf(0.1));
         testLoan.setNumberOfInstallment(3);
         testLoan.setPaid(false);
-
-        testInstallment1 = new LoanInstallment();
-        testInstallment1.setId(1L);
-        testInstallment1.setLoan(testLoan);
-        testInstallment1.setAmount(BigDecimal.valueOf(1000));
-        testInstallment1.setPaidAmount(BigDecimal.ZERO);
-        testInstallment1.setDueDate(LocalDate.now().plusMonths(1));
-        testInstallment1.setPaid(false);
-
-        testInstallment2 = new LoanInstallment();
-        testInstallment2.setId(2L);
-        testInstallment2.setLoan(testLoan);
-        testInstallment2.setAmount(BigDecimal.valueOf(1000));
-        testInstallment2.setPaidAmount(BigDecimal.ZERO);
-        testInstallment2.setDueDate(LocalDate.now().plusMonths(2));
-        testInstallment2.setPaid(false);
-
-        testInstallment3 = new LoanInstallment();
-        testInstallment3.setId(3L);
-        testInstallment3.setLoan(testLoan);
-        testInstallment3.setAmount(BigDecimal.valueOf(1000));
-        testInstallment3.setPaidAmount(BigDecimal.ZERO);
-        testInstallment3.setDueDate(LocalDate.now().plusMonths(3));
-        testInstallment3.setPaid(false);
+        testLoan.setPaidInstallmentCount(0);
+        testLoan.setRemainingAmount(BigDecimal.valueOf(3000));
+        testLoan.setNextDueDate(LocalDate.now().plusMonths(1));
+        testLoan.setNextInstallmentAmount(BigDecimal.valueOf(1000));
     }
 
     @Test
@@ -96,13 +85,7 @@ class LoanPaymentServiceTest {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(1000);
-        List<LoanInstallment> unpaidInstallments = Arrays.asList(testInstallment1, testInstallment2, testInstallment3);
-        List<LoanInstallment> eligibleInstallments = Collections.singletonList(testInstallment1);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When
         PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
@@ -114,24 +97,68 @@ class LoanPaymentServiceTest {
         assertEquals(1000.0, response.totalAmountSpent());
         assertFalse(response.loanPaidCompletely());
 
-        verify(loanInstallmentService).payMultipleLoanInstallments(Collections.singletonList(1L));
-        verify(loanService, never()).updateLoanIsPaidStatus(anyLong(), anyBoolean());
+        verify(loanService).recordLoanPayment(testLoan, 1, BigDecimal.valueOf(1000));
+        verify(loanInstallmentService).payLoanInstallmentsDueUntil(loanId, testLoan.getNextDueDate(), 1);
         verify(customerService).decreaseCustomerUsedCreditLimit(1L, BigDecimal.valueOf(1000));
     }
 
+    @Test
+    @DisplayName("Should append payment to the ledger without updating the loan in ledger mode")
+    void shouldAppendPaymentToLedgerInLedgerMode() {
+        // Given
+        ReflectionTestUtils.setField(loanPaymentService, "paymentLedgerEnabled", true);
+        Long loanId = 1L;
+        BigDecimal paidAmount = BigDecimal.valueOf(2000);
+        Loan ledgerLoan = new Loan();
+        ledgerLoan.setId(loanId);
+        ledgerLoan.setCustomer(testCustomer);
+        ledgerLoan.setNumberOfInstallment(3);
+        ledgerLoan.setPaidInstallmentCount(1);
+        ledgerLoan.setRemainingAmount(BigDecimal.valueOf(2000));
+        ledgerLoan.setNextDueDate(testLoan.getNextDueDate().plusMonths(1));
+        ledgerLoan.setNextInstallmentAmount(BigDecimal.valueOf(1000));
+        when(loanService.findById(loanId)).thenReturn(testLoan);
+        when(paymentLedgerService.withLedgerPayments(testLoan)).thenReturn(ledgerLoan);
+
+        // When
+        PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
+
+        // Then
+        assertEquals(2, response.paidInstallmentCount());
+        assertEquals(2000.0, response.totalAmountSpent());
+        assertTrue(response.loanPaidCompletely());
+
+        verify(paymentLedgerService).appendPayment(ledgerLoan, 2, BigDecimal.valueOf(2000));
+        verifyNoInteractions(customerService, loanInstallmentService);
+        verify(loanService, never()).recordLoanPayment(any(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Should not pay a loan whose ledger payments are not applied after the ledger mode was turned off")
+    void shouldRejectPaymentWithUnprojectedLedgerPaymentsOutsideLedgerMode() {
+        // Given
+        Long loanId = 1L;
+        Loan ledgerLoan = new Loan();
+        ledgerLoan.setId(loanId);
+        when(loanService.findById(loanId)).thenReturn(testLoan);
+        when(paymentLedgerService.withLedgerPayments(testLoan)).thenReturn(ledgerLoan);
+
+        // When
+        CreditException exception = assertThrows(CreditException.class, () -> loanPaymentService.payLoan(loanId, BigDecimal.valueOf(1000)));
+
+        // Then
+        assertEquals("Payments of loan 1 are not applied yet, please retry", exception.getMessage());
+        verifyNoInteractions(customerService, loanInstallmentService);
+        verify(loanService, never()).recordLoanPayment(any(), anyInt(), any());
+    }
+
     @Test
     @DisplayName("Should successfully pay multiple installments")
     void shouldSuccessfullyPayMultipleInstallments() {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(2500);
-        List<LoanInstallment> unpaidInstallments = Arrays.asList(testInstallment1, testInstallment2, testInstallment3);
-        List<LoanInstallment> eligibleInstallments = Arrays.asList(testInstallment1, testInstallment2);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When
         PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
@@ -143,9 +170,13 @@ class LoanPaymentServiceTest {
         assertEquals(2000.0, response.totalAmountSpent());
         assertFalse(response.loanPaidCompletely());
 
-        verify(loanInstallmentService).payMultipleLoanInstallments(Arrays.asList(1L, 2L));
-        verify(loanService, never()).updateLoanIsPaidStatus(anyLong(), anyBoolean());
+        verify(loanService).recordLoanPayment(testLoan, 2, BigDecimal.valueOf(2000));
+        verify(loanInstallmentService).payLoanInstallmentsDueUntil(loanId, testLoan.getNextDueDate().plusMonths(1), 2);
         verify(customerService).decreaseCustomerUsedCreditLimit(1L, BigDecimal.valueOf(2000));
+
+        DistributionSummary installmentsPaid = meterRegistry.get("credit.loan.payment.installments").summary();
+        assertEquals(1, installmentsPaid.count());
+        assertEquals(2, installmentsPaid.totalAmount());
     }
 
     @Test
@@ -154,13 +185,7 @@ class LoanPaymentServiceTest {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(3000);
-        List<LoanInstallment> unpaidInstallments = Arrays.asList(testInstallment1, testInstallment2, testInstallment3);
-        List<LoanInstallment> eligibleInstallments = Arrays.asList(testInstallment1, testInstallment2, testInstallment3);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When
         PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
@@ -172,20 +197,38 @@ class LoanPaymentServiceTest {
         assertEquals(3000.0, response.totalAmountSpent());
         assertTrue(response.loanPaidCompletely());
 
-        verify(loanInstallmentService).payMultipleLoanInstallments(Arrays.asList(1L, 2L, 3L));
-        verify(loanService).updateLoanIsPaidStatus(loanId, true);
+        verify(loanService).recordLoanPayment(testLoan, 3, BigDecimal.valueOf(3000));
+        verify(loanInstallmentService).payLoanInstallmentsDueUntil(loanId, testLoan.getNextDueDate().plusMonths(2), 3);
         verify(customerService).decreaseCustomerUsedCreditLimit(1L, BigDecimal.valueOf(3000));
     }
 
+    @Test
+    @DisplayName("Should deduct the remaining amount when the last installment carries a rounding remainder")
+    void shouldDeductRemainingAmountWhenLastInstallmentIsPaid() {
+        // Given
+        Long loanId = 1L;
+        testLoan.setRemainingAmount(new BigDecimal("1001.00")); // 333.67, 333.67 and 333.66
+        testLoan.setNextInstallmentAmount(new BigDecimal("333.67"));
+        when(loanService.findById(loanId)).thenReturn(testLoan);
+
+        // When
+        PayLoanResponse response = loanPaymentService.payLoan(loanId, new BigDecimal("1001.00"));
+
+        // Then
+        assertEquals(3, response.paidInstallmentCount());
+        assertEquals(1001.00, response.totalAmountSpent());
+        assertTrue(response.loanPaidCompletely());
+        verify(customerService).decreaseCustomerUsedCreditLimit(1L, new BigDecimal("1001.00"));
+    }
+
     @Test
     @DisplayName("Should throw ResourceNotFoundException when no unpaid installments exist")
     void shouldThrowResourceNotFoundExceptionWhenNoUnpaidInstallments() {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(1000);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(Collections.emptyList());
+        testLoan.setPaid(true);
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(
@@ -195,9 +238,8 @@ class LoanPaymentServiceTest {
 
         assertEquals("Unpaid installment could not found for given loan id: " + loanId, exception.getMessage());
 
-        verify(loanInstallmentService, never()).findEligibleInstallments(any(), any());
-        verify(loanInstallmentService, never()).payMultipleLoanInstallments(any());
-        verify(loanService, never()).updateLoanIsPaidStatus(anyLong(), anyBoolean());
+        verify(loanService, never()).recordLoanPayment(any(), anyInt(), any());
+        verify(loanInstallmentService, never()).payLoanInstallmentsDueUntil(anyLong(), any(), anyInt());
         verify(customerService, never()).decreaseCustomerUsedCreditLimit(anyLong(), any());
     }
 
@@ -207,12 +249,7 @@ class LoanPaymentServiceTest {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(500); // Less than installment amount
-        List<LoanInstallment> unpaidInstallments = Collections.singletonList(testInstallment1);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(Collections.emptyList());
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When & Then
         CreditException exception = assertThrows(
@@ -222,36 +259,55 @@ class LoanPaymentServiceTest {
 
         assertEquals("No installments are eligible for payment for loanId: " + loanId, exception.getMessage());
 
-        verify(loanInstallmentService, never()).payMultipleLoanInstallments(any());
-        verify(loanService, never()).updateLoanIsPaidStatus(anyLong(), anyBoolean());
+        verify(loanService, never()).recordLoanPayment(any(), anyInt(), any());
+        verify(loanInstallmentService, never()).payLoanInstallmentsDueUntil(anyLong(), any(), anyInt());
         verify(customerService, never()).decreaseCustomerUsedCreditLimit(anyLong(), any());
     }
 
     @Test
-    @DisplayName("Should throw CreditException when payment amount is less than installment amount")
-    void shouldThrowCreditExceptionWhenPaymentAmountLessThanInstallmentAmount() {
+    @DisplayName("Should throw CreditException when the next installment is due more than 3 months later")
+    void shouldThrowCreditExceptionWhenNextInstallmentIsNotDueYet() {
         // Given
         Long loanId = 1L;
-        BigDecimal paidAmount = BigDecimal.valueOf(500); // Less than 1000
-        List<LoanInstallment> unpaidInstallments = Collections.singletonList(testInstallment1);
-        List<LoanInstallment> eligibleInstallments = Collections.singletonList(testInstallment1);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        testLoan.setNextDueDate(LocalDate.now().plusMonths(4));
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When & Then
-        CreditException exception = assertThrows(
-                CreditException.class,
-                () -> loanPaymentService.payLoan(loanId, paidAmount)
-        );
+        assertThrows(CreditException.class, () -> loanPaymentService.payLoan(loanId, BigDecimal.valueOf(1000)));
 
-        assertEquals("Installment amount exceeds paid amount: 1000", exception.getMessage());
+        verify(loanService, never()).recordLoanPayment(any(), anyInt(), any());
+    }
 
-        verify(loanInstallmentService, never()).payMultipleLoanInstallments(any());
-        verify(loanService, never()).updateLoanIsPaidStatus(anyLong(), anyBoolean());
-        verify(customerService, never()).decreaseCustomerUsedCreditLimit(anyLong(), any());
+    @Test
+    @DisplayName("Should propagate OptimisticLockingFailureException when the loan was paid concurrently")
+    void shouldPropagateOptimisticLockingFailureWhenLoanWasPaidConcurrently() {
+        // Given
+        Long loanId = 1L;
+        when(loanService.findById(loanId)).thenReturn(testLoan);
+        doThrow(new OptimisticLockingFailureException("Loan was paid by another payment, please retry. loanId: 1"))
+                .when(loanService).recordLoanPayment(testLoan, 1, BigDecimal.valueOf(1000));
+
+        // When & Then, the customer update is rolled back with the transaction and the payment is retried
+        assertThrows(OptimisticLockingFailureException.class, () -> loanPaymentService.payLoan(loanId, BigDecimal.valueOf(1000)));
+
+        verify(loanInstallmentService, never()).payLoanInstallmentsDueUntil(anyLong(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should lock the customer before the loan and the installments")
+    void shouldUpdateCustomerLoanAndInstallmentsInLockOrder() {
+        // Given
+        Long loanId = 1L;
+        when(loanService.findById(loanId)).thenReturn(testLoan);
+
+        // When
+        loanPaymentService.payLoan(loanId, BigDecimal.valueOf(1000));
+
+        // Then
+        InOrder lockOrder = inOrder(customerService, loanService, loanInstallmentService);
+        lockOrder.verify(customerService).decreaseCustomerUsedCreditLimit(1L, BigDecimal.valueOf(1000));
+        lockOrder.verify(loanService).recordLoanPayment(testLoan, 1, BigDecimal.valueOf(1000));
+        lockOrder.verify(loanInstallmentService).payLoanInstallmentsDueUntil(loanId, testLoan.getNextDueDate(), 1);
     }
 
     @Test
@@ -260,13 +316,9 @@ class LoanPaymentServiceTest {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(1000); // Exactly matches installment amount
-        List<LoanInstallment> unpaidInstallments = Arrays.asList(testInstallment1, testInstallment2);
-        List<LoanInstallment> eligibleInstallments = Collections.singletonList(testInstallment1);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        testLoan.setPaidInstallmentCount(1);
+        testLoan.setRemainingAmount(BigDecimal.valueOf(2000));
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When
         PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
@@ -284,13 +336,9 @@ class LoanPaymentServiceTest {
         // Given
         Long loanId = 1L;
         BigDecimal paidAmount = BigDecimal.valueOf(1000);
-        List<LoanInstallment> unpaidInstallments = Collections.singletonList(testInstallment1);
-        List<LoanInstallment> eligibleInstallments = Collections.singletonList(testInstallment1);
-
-        when(loanInstallmentService.findLoanInstallmentsByLoanIdAndIsPaid(loanId, false))
-                .thenReturn(unpaidInstallments);
-        when(loanInstallmentService.findEligibleInstallments(unpaidInstallments, paidAmount))
-                .thenReturn(eligibleInstallments);
+        testLoan.setPaidInstallmentCount(2);
+        testLoan.setRemainingAmount(BigDecimal.valueOf(1000));
+        when(loanService.findById(loanId)).thenReturn(testLoan);
 
         // When
         PayLoanResponse response = loanPaymentService.payLoan(loanId, paidAmount);
@@ -301,7 +349,7 @@ class LoanPaymentServiceTest {
         assertEquals(1000.0, response.totalAmountSpent());
         assertTrue(response.loanPaidCompletely()); // All installments paid
 
-        verify(loanService).updateLoanIsPaidStatus(loanId, true);
+        verify(loanService).recordLoanPayment(testLoan, 1, BigDecimal.valueOf(1000));
     }
 
     // Static method tests
@@ -0,0 +1,49 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.domain.Loan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@Import({LoanService.class, CustomerService.class, CustomerCache.class, LoanInstallmentService.class, SimpleMeterRegistry.class})
+class LoanServiceBatchInsertTest {
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @BeforeEach
+    void setUp() {
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void saveLoan_WritesInstallmentScheduleInBatchedStatements() {
+        int numberOfInstallment = 24;
+
+        Loan loan = loanService.saveLoan(1L, new BigDecimal("100.00"), numberOfInstallment, new BigDecimal("0.10"));
+        testEntityManager.flush();
+
+        assertNotNull(loan.getId());
+        // customer limit update, one loan insert and one batched insert for the whole installment schedule
+        assertEquals(1, SqlStatementCounter.count("update customer"));
+        assertEquals(1, SqlStatementCounter.count("insert into loan "));
+        assertEquals(1, SqlStatementCounter.count("insert into loan_installment "));
+        assertEquals(3, SqlStatementCounter.total());
+    }
+}
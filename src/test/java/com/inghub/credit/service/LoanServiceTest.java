@@ -2,19 +2,26 @@ package com.inghub.credit.service;
 
 import com.inghub.credit.domain.Customer;
 import com.inghub.credit.domain.Loan;
+import com.inghub.credit.domain.LoanInstallment;
 import com.inghub.credit.exception.ResourceNotFoundException;
 import com.inghub.credit.repository.LoanRepository;
 import com.inghub.credit.model.CreateLoanResponse;
 import com.inghub.credit.model.ListLoanResponse;
+import com.inghub.credit.model.dto.LoanDTO;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 
@@ -35,6 +42,9 @@ class LoanServiceTest {
     @Mock
     private LoanInstallmentService loanInstallmentService;
 
+    @Mock
+    private EntityManager entityManager;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -76,7 +86,13 @@ class LoanServiceTest {
         loan.setCustomer(customer);
         loan.setLoanAmount(new BigDecimal("100.00"));
 
-        when(customerService.findById(1L)).thenReturn(customer);
+        LoanInstallment firstInstallment = new LoanInstallment();
+        firstInstallment.setAmount(new BigDecimal("91.67"));
+        firstInstallment.setDueDate(LocalDate.of(2025, 2, 1));
+
+        when(customerService.getReferenceById(1L)).thenReturn(customer);
+        when(loanInstallmentService.createLoanInstallments(any(Loan.class), eq(BigDecimal.valueOf(1000)), eq(12), anyList(), eq(BigDecimal.valueOf(0.1))))
+                .thenReturn(List.of(firstInstallment));
         when(loanRepository.save(any(Loan.class))).thenReturn(loan);
 
         CreateLoanResponse response = loanService.createLoan(1L, BigDecimal.valueOf(1000), 12, BigDecimal.valueOf(0.1));
@@ -86,59 +102,89 @@ class LoanServiceTest {
         assertEquals(1000.0, response.loanAmount());
         assertEquals(12, response.numberOfInstallment());
 
-        verify(customerService, times(1)).findById(1L);
-        verify(loanRepository, times(1)).save(any(Loan.class));
+        verify(customerService, times(1)).increaseCustomerUsedCreditLimit(1L, BigDecimal.valueOf(1000));
+        verify(customerService, never()).findById(any());
+
+        ArgumentCaptor<Loan> savedLoan = ArgumentCaptor.forClass(Loan.class);
+        verify(loanRepository, times(1)).save(savedLoan.capture());
+        assertEquals(0, savedLoan.getValue().getPaidInstallmentCount());
+        assertEquals(new BigDecimal("1100.00"), savedLoan.getValue().getRemainingAmount());
+        assertEquals(LocalDate.of(2025, 2, 1), savedLoan.getValue().getNextDueDate());
+        assertEquals(new BigDecimal("91.67"), savedLoan.getValue().getNextInstallmentAmount());
     }
 
     @Test
     void testSearchLoansByCustomerId_Success() {
-        Customer customer = new Customer();
-        customer.setId(1L);
-
-        Loan loan1 = new Loan();
-        loan1.setId(1L);
-        loan1.setCustomer(customer);
-        loan1.setLoanAmount(new BigDecimal("100.00"));
-        loan1.setNumberOfInstallment(12);
+        LoanDTO loan1 = new LoanDTO(1L, null, null, 1L, new BigDecimal("100.00"), 12, false, 0, new BigDecimal("110.00"), LocalDate.of(2025, 2, 1), new BigDecimal("9.17"));
+        LoanDTO loan2 = new LoanDTO(2L, null, null, 1L, new BigDecimal("200.00"), 6, false, 0, new BigDecimal("220.00"), LocalDate.of(2025, 2, 1), new BigDecimal("36.67"));
 
-        Loan loan2 = new Loan();
-        loan2.setId(2L);
-        loan2.setCustomer(customer);
-        loan2.setLoanAmount(new BigDecimal("200.00"));
-        loan2.setNumberOfInstallment(6);
+        List<LoanDTO> loans = Arrays.asList(loan1, loan2);
+        when(loanRepository.findLoanDTOs(any(Specification.class), any(PageRequest.class))).thenReturn(new org.springframework.data.domain.PageImpl<>(loans));
 
-        List<Loan> loans = Arrays.asList(loan1, loan2);
-        when(loanRepository.findAll(any(Specification.class), any(PageRequest.class))).thenReturn(new org.springframework.data.domain.PageImpl<>(loans));
-
-        ListLoanResponse response = loanService.searchLoansByCustomerId(1L, BigDecimal.valueOf(1000), 12, false, 10, 1, "+id");
+        ListLoanResponse response = loanService.searchLoansByCustomerId(1L, BigDecimal.valueOf(1000), 12, false, 10, 1, "+id", null, true);
 
         assertNotNull(response);
         assertEquals(2, response.loans().size());
         assertEquals(1, response.apiModelPage().pageNumber());
         assertEquals(10, response.apiModelPage().pageSize());
 
-        verify(loanRepository, times(1)).findAll(any(Specification.class), any(PageRequest.class));
+        verify(loanRepository, times(1)).findLoanDTOs(any(Specification.class), any(PageRequest.class));
     }
 
     @Test
-    void testUpdateLoanIsPaidStatus_Success() {
-        Loan loan = new Loan();
-        loan.setId(1L);
+    void testRecordLoanPayment_MovesSummaryPastPaidInstallments() {
+        Loan loan = createLoanSummary();
+        when(loanRepository.recordPayment(eq(1L), eq(1), eq(2), any(), any(), any(), anyBoolean(), any())).thenReturn(1);
 
-        when(loanRepository.findById(1L)).thenReturn(java.util.Optional.of(loan));
+        loanService.recordLoanPayment(loan, 2, new BigDecimal("667.34"));
+
+        verify(loanRepository).recordPayment(eq(1L), eq(1), eq(2), eq(new BigDecimal("667.34")), eq(LocalDate.of(2025, 4, 1)),
+                                              eq(new BigDecimal("333.67")), eq(false), any(LocalDateTime.class));
+        assertEquals(3, loan.getPaidInstallmentCount());
+        assertEquals(LocalDate.of(2025, 4, 1), loan.getNextDueDate());
+    }
 
-        loanService.updateLoanIsPaidStatus(1L, true);
+    @Test
+    void testRecordLoanPayment_LastInstallmentLeft_UsesRemainingAmountAsNextInstallment() {
+        Loan loan = createLoanSummary();
+        when(loanRepository.recordPayment(eq(1L), eq(1), eq(3), any(), any(), any(), anyBoolean(), any())).thenReturn(1);
+
+        loanService.recordLoanPayment(loan, 3, new BigDecimal("1001.01"));
 
-        assertTrue(loan.isPaid());
-        verify(loanRepository, times(1)).save(loan);
+        verify(loanRepository).recordPayment(eq(1L), eq(1), eq(3), eq(new BigDecimal("1001.01")), eq(LocalDate.of(2025, 5, 1)),
+                                              eq(new BigDecimal("333.66")), eq(false), any(LocalDateTime.class));
     }
 
     @Test
-    void testUpdateLoanIsPaidStatus_LoanNotFound() {
-        when(loanRepository.findById(1L)).thenReturn(java.util.Optional.empty());
+    void testRecordLoanPayment_AllInstallmentsPaid_ClearsNextInstallmentAndMarksLoanPaid() {
+        Loan loan = createLoanSummary();
+        when(loanRepository.recordPayment(eq(1L), eq(1), eq(4), any(), any(), any(), anyBoolean(), any())).thenReturn(1);
 
-        assertThrows(ResourceNotFoundException.class, () -> loanService.updateLoanIsPaidStatus(1L, true));
+        loanService.recordLoanPayment(loan, 4, new BigDecimal("1334.67"));
 
-        verify(loanRepository, times(1)).findById(1L);
+        verify(loanRepository).recordPayment(eq(1L), eq(1), eq(4), eq(new BigDecimal("1334.67")), isNull(), isNull(), eq(true), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testRecordLoanPayment_PaidConcurrently_ThrowsOptimisticLockingFailureException() {
+        Loan loan = createLoanSummary();
+        when(loanRepository.recordPayment(eq(1L), eq(1), eq(1), any(), any(), any(), anyBoolean(), any())).thenReturn(0);
+
+        OptimisticLockingFailureException exception = assertThrows(OptimisticLockingFailureException.class,
+                                                                   () -> loanService.recordLoanPayment(loan, 1, new BigDecimal("333.67")));
+
+        assertEquals("Loan was paid by another payment, please retry. loanId: 1", exception.getMessage());
+    }
+
+    // 4 installments of 333.67 and a last one of 333.66, the first one is paid
+    private Loan createLoanSummary() {
+        Loan loan = new Loan();
+        loan.setId(1L);
+        loan.setNumberOfInstallment(5);
+        loan.setPaidInstallmentCount(1);
+        loan.setRemainingAmount(new BigDecimal("1334.67"));
+        loan.setNextDueDate(LocalDate.of(2025, 2, 1));
+        loan.setNextInstallmentAmount(new BigDecimal("333.67"));
+        return loan;
     }
 }
@@ -0,0 +1,144 @@
+package com.inghub.credit.service;
+
+import com.inghub.credit.config.JpaTestConfiguration;
+import com.inghub.credit.config.SqlStatementCounter;
+import com.inghub.credit.config.TestCustomers;
+import com.inghub.credit.domain.Customer;
+import com.inghub.credit.domain.Loan;
+import com.inghub.credit.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * N+1 guard: the exact statements every endpoint runs in its own transaction, so an association that starts loading
+ * lazily per row or a mapping that touches an unfetched association fails here. Sequence calls are not counted, and
+ * customer existence checks are served from the warmed CustomerCache.
+ */
+@DataJpaTest(properties = SqlStatementCounter.PROPERTY)
+@ContextConfiguration(classes = JpaTestConfiguration.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({LoanService.class, CustomerService.class, CustomerCache.class, LoanInstallmentService.class, LoanPaymentService.class, PaymentLedgerService.class,
+        LoanExportService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StatementCountTest {
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanInstallmentService loanInstallmentService;
+
+    @Autowired
+    private LoanPaymentService loanPaymentService;
+
+    @Autowired
+    private LoanExportService loanExportService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Customer customer;
+    private Loan loan;
+
+    @BeforeEach
+    void setUp() {
+        customer = TestCustomers.save(customerRepository, new BigDecimal("100000.00"));
+
+        loan = loanService.saveLoan(customer.getId(), new BigDecimal("1200.00"), 12, new BigDecimal("0.10"));
+        loanService.saveLoan(customer.getId(), new BigDecimal("600.00"), 6, new BigDecimal("0.10"));
+        //limit changes evict the customer, so the cache is warmed after them
+        customerService.checkCustomerExists(customer.getId());
+        SqlStatementCounter.clear();
+    }
+
+    @Test
+    void searchLoansByCustomerId_RunsPageAndCountSelects() {
+        loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, 1, "+loanAmount", null, true);
+
+        assertStatements(2, "select l1_0.id", "select count");
+    }
+
+    @Test
+    void searchLoansByCustomerId_WithoutTotalAndCursor_RunOneSelectEach() {
+        loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, 2, "+loanAmount", null, false);
+        loanService.searchLoansByCustomerId(customer.getId(), null, null, null, 1, null, "+loanAmount", "", true);
+
+        assertStatements(2, "select l1_0.id", "select l1_0.id");
+    }
+
+    @Test
+    void searchLoanInstallmentsByLoanId_RunsOneSelectPerPagingMode() {
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 5, 1, "+dueDate", null, true);
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 5, 2, "+dueDate", null, false);
+        loanInstallmentService.searchLoanInstallmentsByLoanId(loan.getId(), 5, null, "+dueDate", "", true);
+
+        assertStatements(4, "select li1_0.id", "select count", "select li1_0.id", "select li1_0.id");
+    }
+
+    @Test
+    void createLoan_ReservesLimitAndBatchesInserts() {
+        loanService.createLoan(customer.getId(), new BigDecimal("1200.00"), 12, new BigDecimal("0.10"));
+
+        //the batched installment inserts are prepared once
+        assertStatements(3, "update customer", "insert into loan ", "insert into loan_installment");
+    }
+
+    @Test
+    void payLoan_PartialPayment_ReadsTheLoanRowAndItsLatestLedgerEntry() {
+        loanPaymentService.payLoan(loan.getId(), new BigDecimal("110.00"));
+
+        assertStatements(5, "select l1_0.id", "select ple1_0.id", "update customer", "update loan ", "update loan_installment");
+    }
+
+    @Test
+    void payLoan_LastInstallments_ReadsTheLoanRowAndItsLatestLedgerEntry() {
+        //the schedule and its summary are moved a year back into the payment window, so one payment closes the loan
+        jdbcTemplate.update("update loan_installment set due_date = dateadd(month, -12, due_date) where loan_id = ?", loan.getId());
+        jdbcTemplate.update("update loan set next_due_date = dateadd(month, -12, next_due_date) where id = ?", loan.getId());
+        SqlStatementCounter.clear();
+
+        loanPaymentService.payLoan(loan.getId(), new BigDecimal("1320.00"));
+
+        assertStatements(5, "select l1_0.id", "select ple1_0.id", "update customer", "update loan ", "update loan_installment");
+    }
+
+    @Test
+    void exportLoansByCustomerId_StreamsOneSelect() throws IOException {
+        loanExportService.exportLoansByCustomerId(customer.getId(), new ByteArrayOutputStream());
+
+        assertStatements(1, "select l1_0.id");
+    }
+
+    private static void assertStatements(int expectedCount, String... expectedPrefixes) {
+        List<String> statements = SqlStatementCounter.getStatements();
+        assertEquals(expectedCount, statements.size(), () -> "Unexpected statements: " + statements);
+        for (int i = 0; i < expectedPrefixes.length; i++) {
+            String statement = statements.get(i);
+            String expectedPrefix = expectedPrefixes[i];
+            assertTrue(statement.startsWith(expectedPrefix), () -> "Expected " + expectedPrefix + " but was " + statement);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.inghub.credit.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testConversions_ShouldRoundHalfUpToCents() {
+        assertEquals(123457, Money.toMinorUnits(new BigDecimal("1234.565")));
+        assertEquals(100, Money.toMinorUnits(BigDecimal.ONE));
+        assertEquals(new BigDecimal("1234.56"), Money.toAmount(123456));
+        assertEquals(125_000_000, Money.toRateUnits(new BigDecimal("0.125")));
+    }
+
+    @Test
+    void testToMinorUnitsDown_ShouldTruncateToCents() {
+        assertEquals(123456, Money.toMinorUnitsDown(new BigDecimal("1234.569")));
+        assertEquals(20001, Money.toMinorUnitsDown(new BigDecimal("200.015")));
+        assertEquals(100, Money.toMinorUnitsDown(BigDecimal.ONE));
+    }
+
+    @Test
+    void testDivideHalfUp_ShouldRoundAwayFromZeroOnHalf() {
+        assertEquals(3, Money.divideHalfUp(5, 2));
+        assertEquals(2, Money.divideHalfUp(7, 4));
+        assertEquals(-3, Money.divideHalfUp(-5, 2));
+        assertEquals(33367, Money.divideHalfUp(100100, 3));
+    }
+
+    @Test
+    void testInstallments_ShouldRoundFromUnroundedTotal() {
+        //total is 15.625, rounding it to 15.63 first would give 2.61 instead of 2.60
+        long[] installments = Money.installments(1250, Money.toRateUnits(new BigDecimal("0.25")), 6);
+
+        assertArrayEquals(new long[]{260, 260, 260, 260, 260, 263}, installments);
+    }
+
+    @Test
+    void testInstallments_ShouldSubtractRemainderFromLastInstallment() {
+        //1001.00 / 3 rounds up to 333.67, three of them would be one cent too much
+        long[] installments = Money.installments(91000, Money.toRateUnits(new BigDecimal("0.10")), 3);
+
+        assertArrayEquals(new long[]{33367, 33367, 33366}, installments);
+    }
+
+    @Test
+    void testInstallments_ShouldMatchBigDecimalSchedule() {
+        for (String loanAmount : new String[]{"1.00", "12.50", "999.99", "1000.00", "12345.67", "1000000.00"}) {
+            for (String interestRate : new String[]{"0.1", "0.15", "0.2", "0.33", "0.5"}) {
+                for (int numberOfInstallment : ConstantValues.VALID_INSTALLMENT_NUMBERS) {
+                    BigDecimal total = new BigDecimal(loanAmount).multiply(BigDecimal.ONE.add(new BigDecimal(interestRate)));
+                    BigDecimal installment = total.divide(new BigDecimal(numberOfInstallment), 2, RoundingMode.HALF_UP);
+                    BigDecimal last = total.setScale(2, RoundingMode.HALF_UP).subtract(installment.multiply(new BigDecimal(numberOfInstallment - 1)));
+
+                    long[] installments = Money.installments(Money.toMinorUnits(new BigDecimal(loanAmount)), Money.toRateUnits(new BigDecimal(interestRate)), numberOfInstallment);
+
+                    String schedule = loanAmount + " " + interestRate + " " + numberOfInstallment + " " + Arrays.toString(installments);
+                    assertEquals(Money.toMinorUnits(installment), installments[0], schedule);
+                    assertEquals(Money.toMinorUnits(last), installments[numberOfInstallment - 1], schedule);
+                    assertEquals(Money.toMinorUnits(total), Arrays.stream(installments).sum(), schedule);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testInstallments_ShouldThrowForNonPositiveCount() {
+        assertThrows(IllegalArgumentException.class, () -> Money.installments(100, 0, 0));
+    }
+}